@@ -1,7 +1,9 @@
 const CLIENT_API_FRIENDLY_NAME = "TextDetectionClientApi";
 const TEXT_FOUND = 'textFound';
 
-var connectedSystem, imageUrl, canvas, ctx;
+var connectedSystem, imageUrl, imageUrls, canvas, ctx;
+// One canvas per image when a gallery is given through imageUrls
+var galleryCanvases = [];
 
 // Event callbacks
 $(document).ready(function () {
@@ -20,6 +22,11 @@ $(document).ready(function () {
         imageUrl = url;
         loadImage();
       }
+      var urls = newValues.imageUrls;
+      if (JSON.stringify(imageUrls) !== JSON.stringify(urls)) {
+        imageUrls = urls;
+        loadGallery();
+      }
     });
 });
 
@@ -30,6 +37,34 @@ function loadImage() {
     canvasMaintenance();
 }
 
+function isGallery() {
+    return Array.isArray(imageUrls) && imageUrls.length > 0;
+}
+
+function loadGallery() {
+    var gallery = $('#gallery');
+    gallery.empty();
+    galleryCanvases = [];
+    $('#canvas').toggle(!isGallery());
+    if (!isGallery()) {
+        return;
+    }
+    $('#detect').prop("disabled", false);
+    imageUrls.forEach(function (url) {
+        var galleryCanvas = $('<canvas></canvas>').css('backgroundImage', 'url(' + url + ')')[0];
+        gallery.append(galleryCanvas);
+        galleryCanvases.push(galleryCanvas);
+
+        // Resize the canvas to match its image
+        var img = new Image();
+        img.addEventListener("load", function () {
+            galleryCanvas.width = this.naturalWidth;
+            galleryCanvas.height = this.naturalHeight;
+        });
+        img.src = url;
+    });
+}
+
 function clearCanvas() {
     ctx.clearRect(0, 0, canvas.width, canvas.height);
 }
@@ -50,11 +85,12 @@ function canvasMaintenance() {
 
 // Invoke and Handle ClientApi response
 function detect() {
-    if (!connectedSystem || !imageUrl) {
+    if (!connectedSystem || (!imageUrl && !isGallery())) {
         return;
     }
 
-    const payload = { imageUrl: imageUrl };
+    // All images of a gallery are sent together, the Client API batches them into as few calls as possible
+    const payload = isGallery() ? { imageUrls: imageUrls } : { imageUrl: imageUrl };
 
     Appian.Component.invokeClientApi(connectedSystem, CLIENT_API_FRIENDLY_NAME, payload)
         .then(handleClientApiResponse)
@@ -74,6 +110,10 @@ function handleClientApiResponse(response) {
         Appian.Component.setValidations(response.payload.error);
         return;
     }
+    if (response.payload.outputResponses) {
+        handleGalleryResponse(response.payload.outputResponses);
+        return;
+    }
     // Clear any error messages
     Appian.Component.setValidations([]);
     var outputResponse = response.payload.outputResponse;
@@ -82,11 +122,40 @@ function handleClientApiResponse(response) {
     // Clear the strokes on the canvas
     clearCanvas();
 
-    ctx.lineWidth = 3;
+    drawBoundingBoxes(ctx, outputResponse.boundingBoxes);
+}
+
+// The Client API returns one result per image, in the order of imageUrls. textFound is saved as one list of
+// words per image, with null for images that failed
+function handleGalleryResponse(outputResponses) {
+    var errors = [];
+    var textFound = [];
+    outputResponses.forEach(function (result, index) {
+        var galleryCanvas = galleryCanvases[index];
+        if (galleryCanvas) {
+            var galleryCtx = galleryCanvas.getContext("2d");
+            galleryCtx.clearRect(0, 0, galleryCanvas.width, galleryCanvas.height);
+            if (result.outputResponse) {
+                drawBoundingBoxes(galleryCtx, result.outputResponse.boundingBoxes);
+            }
+        }
+        if (result.error) {
+            errors.push(result.imageUrl + ": " + result.error);
+            textFound.push(null);
+        } else {
+            textFound.push(result.outputResponse.textFound);
+        }
+    });
+    Appian.Component.setValidations(errors);
+    Appian.Component.saveValue(TEXT_FOUND, textFound);
+}
+
+function drawBoundingBoxes(context, boundingBoxes) {
+    context.lineWidth = 3;
 
     // Draw the bounding boxes around the text found
-    outputResponse.boundingBoxes.forEach(function(boundingBox) {
-        ctx.strokeRect(
+    boundingBoxes.forEach(function(boundingBox) {
+        context.strokeRect(
             boundingBox.x,
             boundingBox.y,
             boundingBox.width,
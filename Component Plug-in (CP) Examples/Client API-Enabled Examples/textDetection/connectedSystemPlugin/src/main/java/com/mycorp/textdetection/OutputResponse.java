@@ -1,8 +1,9 @@
 package com.mycorp.textdetection;
 
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
-
-import com.google.common.collect.Lists;
+import java.util.RandomAccess;
 
 /**
  * Object representation of the response we want to pass back to the CP
@@ -27,22 +28,6 @@ public class OutputResponse {
     private static BoundingBox of(int x, int y, int width, int height) {
       return new BoundingBox(x, y, width, height);
     }
-
-    /**
-     * Converts the Google bounding boxes to what the CP expects
-     * [(topLeft)[x,y], (topRight)[x,y], (bottomRight)[x,y], (bottomLeft)[x,y]] -> [left, top, width, height]
-     */
-    static BoundingBox fromVertices(List<AnnotationResponse.Vertex> vertices) {
-      AnnotationResponse.Vertex topLeft = vertices.get(0);
-      int x = topLeft.x;
-      int y = topLeft.y;
-
-      AnnotationResponse.Vertex bottomRight = vertices.get(2);
-      int width = bottomRight.x - x;
-      int height = bottomRight.y - y;
-
-      return BoundingBox.of(x, y, width, height);
-    }
   }
 
   private OutputResponse(
@@ -51,33 +36,53 @@ public class OutputResponse {
     this.boundingBoxes = boundingBoxes;
   }
 
-  private static OutputResponse of(List<String> textFound, List<BoundingBox> boundingBoxes) {
-    return new OutputResponse(textFound, boundingBoxes);
+  /**
+   * Wraps the words read by {@link VisionResponseReader}, or loaded from a cache, without copying them.
+   * {@code boxes} holds the left, top, width and height of each word one after the other, and a BoundingBox
+   * is only created when the CP response is written.
+   */
+  public static OutputResponse of(String[] words, int[] boxes, int count) {
+    return new OutputResponse(Arrays.asList(words).subList(0, count), new PackedBoundingBoxes(boxes, count));
   }
 
   /**
-   * Generates an OutputResponse from the AnnotationResponse
+   * Returns a copy with every box multiplied by the given factor, for text detected in a resized image
    */
-  public static OutputResponse fromAnnotationResponse(AnnotationResponse annotationResponse) {
-    List<String> textFound = Lists.newArrayList();
-    List<BoundingBox> boundingBoxes = Lists.newArrayList();
+  public OutputResponse scale(double factor) {
+    int count = boundingBoxes.size();
+    int[] boxes = new int[count * 4];
+    for (int i = 0; i < count; i++) {
+      BoundingBox box = boundingBoxes.get(i);
+      boxes[i * 4] = (int)Math.round(box.x * factor);
+      boxes[i * 4 + 1] = (int)Math.round(box.y * factor);
+      boxes[i * 4 + 2] = (int)Math.round(box.width * factor);
+      boxes[i * 4 + 3] = (int)Math.round(box.height * factor);
+    }
+    return new OutputResponse(textFound, new PackedBoundingBoxes(boxes, count));
+  }
 
-    AnnotationResponse.TextResponse textResponse = annotationResponse.responses.get(0);
+  private static final class PackedBoundingBoxes extends AbstractList<BoundingBox> implements RandomAccess {
+    private final int[] boxes;
+    private final int count;
 
-    AnnotationResponse.Error error = textResponse.error;
-    if (error != null) {
-      throw new RuntimeException(error.message);
+    private PackedBoundingBoxes(int[] boxes, int count) {
+      this.boxes = boxes;
+      this.count = count;
     }
 
-    // Ignore the first annotation as only the words should be relayed back and not the sentence
-    textResponse.textAnnotations.stream().skip(1).forEach(
-        textAnnotation -> {
-          textFound.add(textAnnotation.description);
-          boundingBoxes.add(BoundingBox.fromVertices(textAnnotation.boundingPoly.vertices));
-        }
-    );
+    @Override
+    public BoundingBox get(int index) {
+      if (index < 0 || index >= count) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+      }
+      int offset = index * 4;
+      return BoundingBox.of(boxes[offset], boxes[offset + 1], boxes[offset + 2], boxes[offset + 3]);
+    }
 
-    return OutputResponse.of(textFound, boundingBoxes);
+    @Override
+    public int size() {
+      return count;
+    }
   }
 
 }
@@ -0,0 +1,212 @@
+package com.mycorp.textdetection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Reads the body of a Google Text Detection response in a single pass as it arrives.
+ *
+ * Only what the CP is sent is kept: each word and the top left and bottom right corners of its bounding box.
+ * Boxes are written straight into a packed int array. Everything else is skipped without being built,
+ * including the first annotation, which repeats the whole text of the image, and the fullTextAnnotation,
+ * which repeats it again for every page, block, paragraph and symbol.
+ */
+public final class VisionResponseReader {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+  private static final int INITIAL_CAPACITY = 64;
+
+  private VisionResponseReader() {
+  }
+
+  /**
+   * Returns one result per image, in the order the images were sent.
+   */
+  public static List<ImageResult> read(InputStream content) throws IOException {
+    List<ImageResult> results = new ArrayList<>();
+    try (JsonParser parser = JSON_FACTORY.createParser(content)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Google returned a response that is not a JSON object");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        if (parser.nextToken() == JsonToken.START_ARRAY && "responses".equals(field)) {
+          while (parser.nextToken() == JsonToken.START_OBJECT) {
+            results.add(readResponse(parser));
+          }
+        } else {
+          parser.skipChildren();
+        }
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Returns the message of the error Google sent for a whole request, or null if the body has none or is not
+   * JSON, as with errors from a proxy in front of Google.
+   */
+  public static String readRequestError(InputStream content) throws IOException {
+    try (JsonParser parser = JSON_FACTORY.createParser(content)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        return null;
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        if (parser.nextToken() == JsonToken.START_OBJECT && "error".equals(field)) {
+          return readErrorMessage(parser);
+        }
+        parser.skipChildren();
+      }
+    } catch (JsonProcessingException e) {
+      return null;
+    }
+    return null;
+  }
+
+  private static ImageResult readResponse(JsonParser parser) throws IOException {
+    PackedWords words = new PackedWords();
+    String errorMessage = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      if (value == JsonToken.START_ARRAY && "textAnnotations".equals(field)) {
+        readAnnotations(parser, words);
+      } else if (value == JsonToken.START_OBJECT && "error".equals(field)) {
+        errorMessage = readErrorMessage(parser);
+        if (errorMessage == null) {
+          errorMessage = "Google could not detect text in the image";
+        }
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return new ImageResult(words.toOutputResponse(), errorMessage);
+  }
+
+  private static void readAnnotations(JsonParser parser, PackedWords words) throws IOException {
+    // Ignore the first annotation as only the words should be relayed back and not the sentence
+    if (parser.nextToken() != JsonToken.START_OBJECT) {
+      return;
+    }
+    parser.skipChildren();
+    // Corners of the word being read: left, top, right, bottom
+    int[] corners = new int[4];
+    while (parser.nextToken() == JsonToken.START_OBJECT) {
+      String description = null;
+      corners[0] = corners[1] = corners[2] = corners[3] = 0;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+        if ("description".equals(field)) {
+          description = parser.getValueAsString();
+        } else if (value == JsonToken.START_OBJECT && "boundingPoly".equals(field)) {
+          readCorners(parser, corners);
+        } else {
+          parser.skipChildren();
+        }
+      }
+      words.add(description, corners);
+    }
+  }
+
+  /**
+   * Google sends the vertices as [topLeft, topRight, bottomRight, bottomLeft] and leaves out coordinates
+   * that are 0.
+   */
+  private static void readCorners(JsonParser parser, int[] corners) throws IOException {
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      if (parser.nextToken() != JsonToken.START_ARRAY || !"vertices".equals(field)) {
+        parser.skipChildren();
+        continue;
+      }
+      for (int vertex = 0; parser.nextToken() == JsonToken.START_OBJECT; vertex++) {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String axis = parser.getCurrentName();
+          parser.nextToken();
+          if (vertex == 0 || vertex == 2) {
+            int offset = vertex == 0 ? 0 : 2;
+            if ("x".equals(axis)) {
+              corners[offset] = parser.getValueAsInt();
+            } else if ("y".equals(axis)) {
+              corners[offset + 1] = parser.getValueAsInt();
+            }
+          }
+          parser.skipChildren();
+        }
+      }
+    }
+  }
+
+  // Returns null if the error has no message
+  private static String readErrorMessage(JsonParser parser) throws IOException {
+    String message = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      if ("message".equals(field)) {
+        message = parser.getValueAsString();
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return message;
+  }
+
+  /**
+   * The words found in one image, or the error Google returned for it.
+   */
+  public static final class ImageResult {
+    private final OutputResponse outputResponse;
+    private final String errorMessage;
+
+    private ImageResult(OutputResponse outputResponse, String errorMessage) {
+      this.outputResponse = outputResponse;
+      this.errorMessage = errorMessage;
+    }
+
+    /**
+     * @throws RuntimeException with Google's message if the image could not be read
+     */
+    public OutputResponse getOutputResponse() {
+      if (errorMessage != null) {
+        throw new RuntimeException(errorMessage);
+      }
+      return outputResponse;
+    }
+  }
+
+  // Growable arrays of words and of their boxes, four ints per word
+  private static final class PackedWords {
+    private String[] words = new String[INITIAL_CAPACITY];
+    private int[] boxes = new int[INITIAL_CAPACITY * 4];
+    private int count;
+
+    private void add(String word, int[] corners) {
+      if (count == words.length) {
+        words = Arrays.copyOf(words, count * 2);
+        boxes = Arrays.copyOf(boxes, count * 8);
+      }
+      words[count] = word;
+      int offset = count * 4;
+      boxes[offset] = corners[0];
+      boxes[offset + 1] = corners[1];
+      boxes[offset + 2] = corners[2] - corners[0];
+      boxes[offset + 3] = corners[3] - corners[1];
+      count++;
+    }
+
+    private OutputResponse toOutputResponse() {
+      return OutputResponse.of(words, boxes, count);
+    }
+  }
+}
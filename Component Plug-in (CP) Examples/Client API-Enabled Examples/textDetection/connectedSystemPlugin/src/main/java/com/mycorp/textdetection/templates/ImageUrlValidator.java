@@ -0,0 +1,91 @@
+package com.mycorp.textdetection.templates;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.UnknownHostException;
+import java.util.Locale;
+
+import org.apache.http.conn.DnsResolver;
+
+/**
+ * Checks image URLs that Appian itself requests, when fetching images to send inline.
+ *
+ * The URLs come from whoever calls the integration, so only http and https URLs whose host resolves to
+ * public addresses are requested. Anything on the Appian server or its private network is refused. The
+ * addresses are checked by {@link #DNS_RESOLVER}, which the image client connects through, so a host cannot
+ * resolve to a public address for the check and to a private one for the connection. The errors say which
+ * rule the URL broke but never what, if anything, answers at that address.
+ */
+final class ImageUrlValidator {
+
+  /**
+   * Resolves hosts for the image client, refusing any host with an address that is not public
+   */
+  static final DnsResolver DNS_RESOLVER = host -> {
+    InetAddress[] addresses;
+    try {
+      addresses = InetAddress.getAllByName(host);
+    } catch (UnknownHostException e) {
+      throw new UnknownHostException("The host of the image URL could not be resolved");
+    }
+    for (InetAddress address : addresses) {
+      if (!isPublic(address)) {
+        throw new UnknownHostException("Images on local or private network addresses cannot be fetched");
+      }
+    }
+    return addresses;
+  };
+
+  private ImageUrlValidator() {
+  }
+
+  /**
+   * Returns the URL as a URI if it is an http or https URL with a host, throws otherwise. Its addresses are
+   * checked once it is connected to.
+   */
+  static URI validate(String imageUrl) throws IOException {
+    URI uri;
+    try {
+      uri = new URI(imageUrl);
+    } catch (URISyntaxException | NullPointerException e) {
+      throw new IOException("The image URL is not a valid URL");
+    }
+    String scheme = uri.getScheme() == null ? "" : uri.getScheme().toLowerCase(Locale.ROOT);
+    if (!scheme.equals("http") && !scheme.equals("https")) {
+      throw new IOException("Only http and https image URLs are supported");
+    }
+    if (uri.getHost() == null) {
+      throw new IOException("The image URL has no host");
+    }
+    return uri;
+  }
+
+  /**
+   * Resolves the Location of a redirect against the URL that returned it, then validates the result
+   */
+  static URI validateRedirect(URI from, String location) throws IOException {
+    try {
+      return validate(from.resolve(location).toString());
+    } catch (IllegalArgumentException e) {
+      throw new IOException("The image URL redirects to an invalid URL");
+    }
+  }
+
+  private static boolean isPublic(InetAddress address) {
+    if (address.isAnyLocalAddress() || address.isLoopbackAddress() || address.isLinkLocalAddress() ||
+        address.isSiteLocalAddress() || address.isMulticastAddress()) {
+      return false;
+    }
+    byte[] bytes = address.getAddress();
+    // Carrier-grade NAT, 100.64.0.0/10, is private to the provider's network
+    if (address instanceof Inet4Address) {
+      return bytes[0] != 100 || (bytes[1] & 0xc0) != 64;
+    }
+    // IPv6 unique local addresses, fc00::/7, are the IPv6 private networks
+    return !(address instanceof Inet6Address) || (bytes[0] & 0xfe) != 0xfc;
+  }
+}
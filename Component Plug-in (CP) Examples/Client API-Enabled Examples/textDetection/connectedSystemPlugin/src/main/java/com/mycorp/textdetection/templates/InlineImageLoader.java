@@ -0,0 +1,183 @@
+package com.mycorp.textdetection.templates;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+
+import com.appian.connectedsystems.simplified.sdk.configuration.SimpleConfiguration;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Fetches images so that they can be sent to Google inline rather than by URL, for images Google cannot
+ * reach itself.
+ *
+ * When a maximum dimension is configured, larger images are downscaled before being sent: Google's text
+ * detection does not need the full resolution of large scans, and smaller images are faster to send and to
+ * process. Only the image header is read to decide, so images that are already small enough are sent exactly
+ * as they were fetched.
+ *
+ * Image URLs, and every redirect they lead to, are checked with {@link ImageUrlValidator}, and are fetched
+ * with a client that only connects to public addresses. Errors do not repeat the URL or what the image host answered, so that an integration cannot be
+ * used to probe addresses it should not reach.
+ */
+final class InlineImageLoader {
+
+  // Google accepts up to 10 MB of JSON per request, and base64 makes the image a third larger
+  static final int MAX_INLINE_BYTES = 7 * 1024 * 1024;
+  // Larger images are refused before being downloaded
+  private static final int MAX_DOWNLOAD_BYTES = 50 * 1024 * 1024;
+  // Images are decoded to 4 bytes a pixel to be downscaled, a 600 dpi A4 scan is about 35 million pixels
+  private static final long MAX_DECODED_PIXELS = 40_000_000L;
+  private static final int MAX_REDIRECTS = 5;
+
+  private final CloseableHttpClient client;
+  private final int maxDimension;
+
+  InlineImageLoader(SimpleConfiguration connectedSystemConfiguration) {
+    this.client = TextDetectionConnectionPool.getImageClient(connectedSystemConfiguration);
+    Integer configuredMaxDimension = connectedSystemConfiguration.getValue(
+        TextDetectionConnectedSystemTemplate.MAX_IMAGE_DIMENSION_KEY);
+    this.maxDimension = configuredMaxDimension == null ? 0 : configuredMaxDimension;
+  }
+
+  /**
+   * Identifies results of this loader in the result cache. Results depend on the resolution the image was
+   * sent at, so the maximum dimension is part of it.
+   */
+  String getContentKey(VisionImage image) {
+    return image.getContentHash() + "/" + maxDimension;
+  }
+
+  VisionImage load(String imageUrl) throws IOException {
+    byte[] original = fetch(imageUrl);
+    String contentHash = Hashing.sha256().hashBytes(original).toString();
+
+    byte[] content = original;
+    double scaleBack = 1;
+    int[] size = maxDimension > 0 ? readSize(original) : null;
+    if (maxDimension > 0 && size == null) {
+      throw new IOException("The image is not in a format that can be downscaled, such as JPEG or PNG");
+    }
+    if (size != null && Math.max(size[0], size[1]) > maxDimension) {
+      if ((long)size[0] * size[1] > MAX_DECODED_PIXELS) {
+        throw new IOException("The image has more than " + MAX_DECODED_PIXELS / 1_000_000 +
+            " million pixels, too many to downscale");
+      }
+      BufferedImage image = ImageIO.read(new ByteArrayInputStream(original));
+      if (image != null) {
+        BufferedImage scaled = downscale(image, (double)maxDimension / Math.max(size[0], size[1]));
+        content = encode(scaled);
+        scaleBack = (double)image.getWidth() / scaled.getWidth();
+      }
+    }
+    if (content.length > MAX_INLINE_BYTES) {
+      throw new IOException("The image is too large to send inline, set a Max Image " +
+          "Dimension on the connected system so that it is downscaled");
+    }
+    return VisionImage.inline(imageUrl, content, contentHash, scaleBack);
+  }
+
+  private byte[] fetch(String imageUrl) throws IOException {
+    URI uri = ImageUrlValidator.validate(imageUrl);
+    for (int redirects = 0; ; redirects++) {
+      // Redirects are followed here rather than by the client, so that each one is validated
+      try (CloseableHttpResponse response = client.execute(new HttpGet(uri))) {
+        HttpEntity entity = response.getEntity();
+        int statusCode = response.getStatusLine().getStatusCode();
+        Header location = response.getFirstHeader(HttpHeaders.LOCATION);
+        if (statusCode / 100 == 3 && location != null && redirects < MAX_REDIRECTS) {
+          EntityUtils.consumeQuietly(entity);
+          uri = ImageUrlValidator.validateRedirect(uri, location.getValue());
+          continue;
+        }
+        if (statusCode != HttpStatus.SC_OK || entity == null) {
+          EntityUtils.consumeQuietly(entity);
+          throw new IOException("Could not fetch the image");
+        }
+        if (entity.getContentLength() > MAX_DOWNLOAD_BYTES) {
+          throw new IOException("The image is larger than " + MAX_DOWNLOAD_BYTES / (1024 * 1024) + " MB");
+        }
+        try (InputStream content = entity.getContent()) {
+          byte[] bytes = ByteStreams.toByteArray(ByteStreams.limit(content, MAX_DOWNLOAD_BYTES + 1L));
+          if (bytes.length > MAX_DOWNLOAD_BYTES) {
+            throw new IOException("The image is larger than " + MAX_DOWNLOAD_BYTES / (1024 * 1024) + " MB");
+          }
+          return bytes;
+        }
+      }
+    }
+  }
+
+  // Width and height from the image header without decoding the pixels, or null for unknown formats
+  private static int[] readSize(byte[] image) throws IOException {
+    try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(image))) {
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+      if (!readers.hasNext()) {
+        return null;
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(input, true, true);
+        return new int[] {reader.getWidth(0), reader.getHeight(0)};
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  /**
+   * Halves the image with bilinear filtering until it is less than twice the target size, then makes the
+   * last step. Each step only averages neighbouring pixels, which is fast, and halving first keeps thin
+   * strokes of text from disappearing the way they would in a single large bilinear step.
+   */
+  private static BufferedImage downscale(BufferedImage image, double scale) {
+    int targetWidth = Math.max(1, (int)Math.round(image.getWidth() * scale));
+    int targetHeight = Math.max(1, (int)Math.round(image.getHeight() * scale));
+    int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+    BufferedImage current = image;
+    int width = image.getWidth();
+    int height = image.getHeight();
+    do {
+      width = Math.max(targetWidth, width / 2);
+      height = Math.max(targetHeight, height / 2);
+      BufferedImage next = new BufferedImage(width, height, type);
+      Graphics2D graphics = next.createGraphics();
+      try {
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(current, 0, 0, width, height, null);
+      } finally {
+        graphics.dispose();
+      }
+      current = next;
+    } while (width != targetWidth || height != targetHeight);
+    return current;
+  }
+
+  // PNG keeps transparency, everything else is sent as JPEG which is far smaller for scans and photos
+  private static byte[] encode(BufferedImage image) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ImageIO.write(image, image.getColorModel().hasAlpha() ? "png" : "jpg", output);
+    return output.toByteArray();
+  }
+}
@@ -0,0 +1,99 @@
+package com.mycorp.textdetection.templates;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket that keeps the calls made with one API key under the rate configured on the connected system.
+ *
+ * Google counts quota per key, and a call sent over quota only comes back as a 429. Instead, each call takes
+ * a token before it is sent. Tokens are added at the configured rate, and up to {@code burst} of them can be
+ * saved while the key is idle. When no token is left, the call reserves the next free one and waits for it,
+ * so calls at the limit go out evenly spaced rather than in bursts. A call that would have to wait longer
+ * than its deadline is rejected right away, without waiting and without using a token.
+ *
+ * The limit applies to this node. On a cluster, set it to each node's share of the quota.
+ */
+final class RequestRateLimiter {
+
+  static final int DEFAULT_MAX_WAIT_MS = 1_000;
+
+  private static final RequestRateLimiter UNLIMITED = new RequestRateLimiter(0, 0);
+  private static final ConcurrentMap<String,RequestRateLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+  private final long nanosPerToken;
+  private final double burst;
+  //Goes below zero while calls are waiting for tokens that have been reserved but not added yet
+  private double tokens;
+  private long lastRefillNanos = System.nanoTime();
+
+  private RequestRateLimiter(int requestsPerSecond, int burst) {
+    this.nanosPerToken = requestsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / requestsPerSecond : 0;
+    this.burst = burst;
+    this.tokens = burst;
+  }
+
+  /**
+   * Returns the limiter shared by every call made with the key. {@code key} identifies the API key, such as
+   * its fingerprint. Calls are not limited when no rate is configured. The burst defaults to one second of
+   * calls at the configured rate.
+   */
+  static RequestRateLimiter get(String key, Integer requestsPerSecond, Integer burst) {
+    if (requestsPerSecond == null || requestsPerSecond <= 0) {
+      return UNLIMITED;
+    }
+    int bucketSize = burst == null || burst <= 0 ? requestsPerSecond : burst;
+    //A changed rate or burst starts a new bucket, the old one is simply no longer used
+    return LIMITERS.computeIfAbsent(key + "/" + requestsPerSecond + "/" + bucketSize,
+        ignored -> new RequestRateLimiter(requestsPerSecond, bucketSize));
+  }
+
+  /**
+   * Waits until the call may be sent and returns how long that took, in milliseconds.
+   *
+   * @throws RateLimitExceededException if the call would have to wait longer than {@code maxWaitMs}
+   */
+  long acquire(Integer maxWaitMs) throws IOException {
+    if (nanosPerToken == 0) {
+      return 0;
+    }
+    long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(
+        maxWaitMs == null || maxWaitMs < 0 ? DEFAULT_MAX_WAIT_MS : maxWaitMs);
+    long waitNanos = reserve(maxWaitNanos);
+    if (waitNanos < 0) {
+      throw new RateLimitExceededException();
+    }
+    try {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the rate limit");
+    }
+    return TimeUnit.NANOSECONDS.toMillis(waitNanos);
+  }
+
+  //Takes a token and returns how long to wait until it is actually available, or -1 if that is too long
+  private synchronized long reserve(long maxWaitNanos) {
+    long now = System.nanoTime();
+    tokens = Math.min(burst, tokens + (double)(now - lastRefillNanos) / nanosPerToken);
+    lastRefillNanos = now;
+    long waitNanos = tokens >= 1 ? 0 : (long)((1 - tokens) * nanosPerToken);
+    if (waitNanos > maxWaitNanos) {
+      return -1;
+    }
+    tokens--;
+    return waitNanos;
+  }
+
+  /**
+   * Thrown instead of sending a call that would exceed the configured rate.
+   */
+  public static class RateLimitExceededException extends IOException {
+    RateLimitExceededException() {
+      super("Too many requests are waiting for the rate limit configured on the connected system");
+    }
+  }
+}
@@ -1,30 +1,49 @@
 package com.mycorp.textdetection.templates;
 
 import static com.mycorp.textdetection.templates.TextDetectionConnectedSystemTemplate.API_KEY;
+import static com.mycorp.textdetection.templates.TextDetectionConnectedSystemTemplate.RATE_LIMIT_BURST_KEY;
+import static com.mycorp.textdetection.templates.TextDetectionConnectedSystemTemplate.RATE_LIMIT_KEY;
+import static com.mycorp.textdetection.templates.TextDetectionConnectedSystemTemplate.RATE_LIMIT_MAX_WAIT_KEY;
+import static com.mycorp.textdetection.templates.TextDetectionConnectedSystemTemplate.SEND_IMAGES_INLINE_KEY;
 
-import java.io.UnsupportedEncodingException;
+import java.io.InputStream;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
-import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
-import org.apache.http.client.HttpClient;
+import org.apache.http.client.entity.GzipCompressingEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.appian.connectedsystems.simplified.sdk.SimpleClientApi;
 import com.appian.connectedsystems.simplified.sdk.SimpleClientApiRequest;
+import com.appian.connectedsystems.simplified.sdk.configuration.SimpleConfiguration;
 import com.appian.connectedsystems.templateframework.sdk.ClientApiResponse;
 import com.appian.connectedsystems.templateframework.sdk.ExecutionContext;
 import com.appian.connectedsystems.templateframework.sdk.TemplateId;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableMap;
-import com.mycorp.textdetection.AnnotationResponse;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.mycorp.textdetection.OutputResponse;
+import com.mycorp.textdetection.VisionResponseReader;
 
 
 /**
@@ -36,96 +55,322 @@ import com.mycorp.textdetection.OutputResponse;
  * In this example, the Connected System stores a secret value, the Google API key, which
  * the Client API uses to submit a request to the Google Text Detection API. The Client API
  * then parses the response and returns a map of coordinates and the text found back to the CP.
+ *
+ * The CP may also send a list of up to 100 image URLs. Google annotates up to 16 images in one call, so the
+ * list is split into groups of that size, each group is sent as soon as its images are ready, and one result
+ * is returned per image.
+ *
+ * When the connected system sends images inline, each image is fetched here, downscaled if configured, and its
+ * content is sent instead of its URL. The boxes Google returns are then scaled back to the original image.
  */
 
 @TemplateId(name = "TextDetectionClientApi")
 public class TextDetectionClientApi extends SimpleClientApi {
 
-  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().configure(
-      DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-
-  // Payload key in CP request
+  // Payload keys in CP request
   private static final String IMAGE_URL_KEY = "imageUrl";
+  private static final String IMAGE_URLS_KEY = "imageUrls";
 
   // Google Text Detection endpoint
   private static final String IMAGE_ANNOTATE_ENDPOINT = "https://vision.googleapis.com/v1/images:annotate";
   private static final String PARAMETER_KEY = "key";
+  private static final int GZIP_THRESHOLD_BYTES = 1024;
+
+  // Most images Google accepts in a single annotate request
+  private static final int MAX_IMAGES_PER_REQUEST = 16;
+  // Google accepts up to 10 MB of JSON per request, which inline images reach long before 16 of them
+  private static final long MAX_REQUEST_BYTES = 9L * 1024 * 1024;
+  private static final int MAX_CONCURRENT_REQUESTS = 8;
+  // Most image URLs accepted in one CP request
+  private static final int MAX_IMAGE_URLS = 100;
+  // Per detection, images prepared ahead of the group being filled, and groups sent but not yet answered
+  private static final int MAX_PREPARED_AHEAD = MAX_CONCURRENT_REQUESTS;
+  private static final int MAX_GROUPS_IN_FLIGHT = 4;
 
-  // Request body to use when POSTing a request to Google API
-  private static final String REQUEST_ENTITY =
-          "{" +
-          "  \"requests\": [" +
-          "    {" +
-          "      \"image\": {" +
-          "        \"source\": {" +
-          "          \"imageUri\": \"%s\"" +
-          "        }" +
-          "      }," +
-          "      \"features\": [" +
-          "        {" +
-          "          \"type\": \"TEXT_DETECTION\"" +
-          "        }" +
-          "      ]," +
-          "     \"imageContext\": {" +
-          "        \"languageHints\": [\"en-t-i0-handwrit\"]" +
-          "      }" +
-          "    }" +
-          "  ]" +
-          "}";
+  // Sends Vision calls and prepares images for all detections. Daemon threads so that an idle pool never
+  // keeps the JVM alive
+  private static final ExecutorService VISION_WORKERS = Executors.newFixedThreadPool(MAX_CONCURRENT_REQUESTS,
+      new ThreadFactoryBuilder().setNameFormat("vision-worker-%d").setDaemon(true).build());
+
+  private static final Logger LOG = LoggerFactory.getLogger(TextDetectionClientApi.class);
 
   @Override
   protected ClientApiResponse execute(
       SimpleClientApiRequest simpleClientApiRequest, ExecutionContext executionContext) {
 
     // API key to access Google Text Detection API
-    String apiKey = simpleClientApiRequest.getConnectedSystemConfiguration().getValue(API_KEY);
-
-    // Image URL provided by the CP
-    String imageUrl = (String)simpleClientApiRequest.getPayload().get(IMAGE_URL_KEY);
+    SimpleConfiguration connectedSystemConfiguration = simpleClientApiRequest.getConnectedSystemConfiguration();
+    String apiKey = connectedSystemConfiguration.getValue(API_KEY);
 
     Map<String,Object> resultMap;
+    // Images that were detected before are answered from the cache without calling Google
+    TextDetectionResultCache resultCache = TextDetectionResultCache.forConfiguration(connectedSystemConfiguration);
+    Boolean sendInline = connectedSystemConfiguration.getValue(SEND_IMAGES_INLINE_KEY);
+    InlineImageLoader inlineImageLoader = Boolean.TRUE.equals(sendInline) ?
+        new InlineImageLoader(connectedSystemConfiguration) : null;
 
-    try {
-      AnnotationResponse annotationResponse = detectProperties(imageUrl, apiKey);
-      OutputResponse outputResponse = OutputResponse.fromAnnotationResponse(annotationResponse);
-      resultMap = ImmutableMap.of("outputResponse", outputResponse);
-    } catch (Exception e) {
-      resultMap = ImmutableMap.of("error", e.getLocalizedMessage());
+    // Image URLs provided by the CP, either a single one or a list
+    Object imageUrls = simpleClientApiRequest.getPayload().get(IMAGE_URLS_KEY);
+    if (imageUrls instanceof List && ((List<?>)imageUrls).size() > MAX_IMAGE_URLS) {
+      resultMap = ImmutableMap.of("error", "At most " + MAX_IMAGE_URLS + " images can be detected at once, " +
+          ((List<?>)imageUrls).size() + " were sent");
+    } else if (imageUrls instanceof List) {
+      List<String> urls = new ArrayList<>();
+      for (Object imageUrl : (List<?>)imageUrls) {
+        urls.add(String.valueOf(imageUrl));
+      }
+      resultMap = ImmutableMap.of("outputResponses",
+          detectAll(urls, apiKey, connectedSystemConfiguration, resultCache, inlineImageLoader));
+    } else {
+      String imageUrl = (String)simpleClientApiRequest.getPayload().get(IMAGE_URL_KEY);
+      try {
+        PreparedImage prepared = prepare(imageUrl, resultCache, inlineImageLoader);
+        OutputResponse outputResponse = prepared.lookup.getOutputResponse();
+        if (!prepared.lookup.isHit()) {
+          outputResponse = prepared.image.restore(detectProperties(Collections.singletonList(prepared.image),
+              apiKey, connectedSystemConfiguration).get(0).getOutputResponse());
+          resultCache.put(prepared.lookup, outputResponse);
+        }
+        resultMap = ImmutableMap.of("outputResponse", outputResponse);
+      } catch (Exception e) {
+        resultMap = ImmutableMap.of("error", e.getLocalizedMessage());
+      }
+    }
+
+    if (LOG.isDebugEnabled()) {
+      // Pending connections mean detections waited for the pool, which should then be made larger
+      PoolStats stats = TextDetectionConnectionPool.getStats(connectedSystemConfiguration);
+      LOG.debug("Vision connection pool: {} leased, {} pending, {} available, {} max", stats.getLeased(),
+          stats.getPending(), stats.getAvailable(), stats.getMax());
     }
 
     return new ClientApiResponse(resultMap);
   }
 
   /**
-   * Makes the call out to the Google Text Detection endpoint via HTTP POST.
+   * Looks the image up in the result cache. Inline images are fetched first, since their cache key is a hash
+   * of their content.
+   */
+  private static PreparedImage prepare(
+      String imageUrl, TextDetectionResultCache resultCache, InlineImageLoader inlineImageLoader) throws Exception {
+    if (inlineImageLoader == null) {
+      return new PreparedImage(VisionImage.byUrl(imageUrl), resultCache.lookup(imageUrl));
+    }
+    VisionImage image = inlineImageLoader.load(imageUrl);
+    return new PreparedImage(image, resultCache.lookupContent(inlineImageLoader.getContentKey(image)));
+  }
+
+  /**
+   * Detects text in every image, returning one map per image, in order, that holds the image URL and either
+   * its outputResponse or an error. Cached results are used where they are still valid and only the other
+   * images are sent to Google. A failed call only fails the images that were sent in it.
    *
-   * Converts the HttpResponse into an AnnotationResponse.
+   * Images are prepared a few at a time, ahead of the group being filled, and a group is sent as soon as it
+   * is full. Only the images of the groups waiting for Google and of the few being prepared are held at once.
    */
-  private AnnotationResponse detectProperties(String imageUrl, String apiKey) throws Exception {
-    HttpPost post = createRequest(imageUrl, apiKey);
-    HttpClient httpClient = HttpClientBuilder.create().build();
+  private List<Map<String,Object>> detectAll(
+      List<String> imageUrls,
+      String apiKey,
+      SimpleConfiguration connectedSystemConfiguration,
+      TextDetectionResultCache resultCache,
+      InlineImageLoader inlineImageLoader) {
+    List<Map<String,Object>> results = new ArrayList<>(Collections.nCopies(imageUrls.size(), null));
+    // Preparing an image may fetch it, so a few images are prepared concurrently
+    Deque<Future<PreparedImage>> preparations = new ArrayDeque<>();
+    Deque<Group> inFlight = new ArrayDeque<>();
+    Group group = new Group();
+    int nextToPrepare = 0;
+    for (int i = 0; i < imageUrls.size(); i++) {
+      while (nextToPrepare < imageUrls.size() && preparations.size() < MAX_PREPARED_AHEAD) {
+        String imageUrl = imageUrls.get(nextToPrepare++);
+        preparations.add(VISION_WORKERS.submit(() -> prepare(imageUrl, resultCache, inlineImageLoader)));
+      }
+      PreparedImage prepared;
+      try {
+        prepared = await(preparations.poll(), preparations);
+      } catch (ExecutionException e) {
+        results.set(i, errorResult(imageUrls.get(i), e.getCause()));
+        continue;
+      }
+      if (prepared.lookup.isHit()) {
+        results.set(i, ImmutableMap.of("imageUrl", imageUrls.get(i), "outputResponse",
+            prepared.lookup.getOutputResponse()));
+        continue;
+      }
+      if (!group.canAdd(prepared)) {
+        send(group, inFlight, apiKey, connectedSystemConfiguration, imageUrls, results, resultCache);
+        group = new Group();
+      }
+      group.add(i, prepared);
+      if (group.indexes.size() == MAX_IMAGES_PER_REQUEST) {
+        send(group, inFlight, apiKey, connectedSystemConfiguration, imageUrls, results, resultCache);
+        group = new Group();
+      }
+    }
+    if (!group.indexes.isEmpty()) {
+      send(group, inFlight, apiKey, connectedSystemConfiguration, imageUrls, results, resultCache);
+    }
+    while (!inFlight.isEmpty()) {
+      collect(inFlight.poll(), inFlight, imageUrls, results, resultCache);
+    }
+    return results;
+  }
 
-    // Make a REST call to Google Text Detection endpoint
-    HttpResponse httpResponse = httpClient.execute(post);
+  // Sends the group to Google, first waiting for the oldest group sent if too many are waiting for Google
+  private void send(
+      Group group,
+      Deque<Group> inFlight,
+      String apiKey,
+      SimpleConfiguration connectedSystemConfiguration,
+      List<String> imageUrls,
+      List<Map<String,Object>> results,
+      TextDetectionResultCache resultCache) {
+    if (inFlight.size() >= MAX_GROUPS_IN_FLIGHT) {
+      collect(inFlight.poll(), inFlight, imageUrls, results, resultCache);
+    }
+    List<VisionImage> images = new ArrayList<>(group.images.size());
+    for (PreparedImage prepared : group.images) {
+      images.add(prepared.image);
+    }
+    group.call = VISION_WORKERS.submit(() -> detectProperties(images, apiKey, connectedSystemConfiguration));
+    inFlight.add(group);
+  }
 
-    if (httpResponse.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-      String responseJson = EntityUtils.toString(httpResponse.getEntity());
-      throw new RuntimeException(responseJson);
+  // Waits for Google's answer to the group and records a result for each of its images
+  private static void collect(
+      Group group,
+      Deque<Group> inFlight,
+      List<String> imageUrls,
+      List<Map<String,Object>> results,
+      TextDetectionResultCache resultCache) {
+    List<VisionResponseReader.ImageResult> imageResults;
+    try {
+      imageResults = await(group.call, inFlight.stream().map(other -> other.call).collect(Collectors.toList()));
+    } catch (ExecutionException e) {
+      for (int index : group.indexes) {
+        results.set(index, errorResult(imageUrls.get(index), e.getCause()));
+      }
+      return;
     }
+    // Google answers with one response per image, in the order the images were sent
+    for (int j = 0; j < group.indexes.size(); j++) {
+      int index = group.indexes.get(j);
+      try {
+        PreparedImage image = group.images.get(j);
+        OutputResponse outputResponse = image.image.restore(imageResults.get(j).getOutputResponse());
+        resultCache.put(image.lookup, outputResponse);
+        results.set(index, ImmutableMap.of("imageUrl", imageUrls.get(index), "outputResponse", outputResponse));
+      } catch (RuntimeException e) {
+        results.set(index, errorResult(imageUrls.get(index), e));
+      }
+    }
+  }
 
-    String responseJson = EntityUtils.toString(httpResponse.getEntity());
-    AnnotationResponse annotationResponse = OBJECT_MAPPER.readValue(responseJson, AnnotationResponse.class);
-    return annotationResponse;
+  // Waits for one of the futures, cancelling it and the others if the detection is interrupted
+  private static <T> T await(Future<T> future, Collection<? extends Future<?>> others) throws ExecutionException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      future.cancel(true);
+      others.forEach(other -> other.cancel(true));
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static Map<String,Object> errorResult(String imageUrl, Throwable error) {
+    return ImmutableMap.of("imageUrl", imageUrl, "error", String.valueOf(error.getLocalizedMessage()));
   }
 
-  private HttpPost createRequest(String imageUrl, String apiKey)
-      throws URISyntaxException, UnsupportedEncodingException {
+  /**
+   * Makes the call out to the Google Text Detection endpoint via HTTP POST.
+   *
+   * Reads the HttpResponse as it arrives into one result per image.
+   */
+  private List<VisionResponseReader.ImageResult> detectProperties(
+      List<VisionImage> images, String apiKey, SimpleConfiguration connectedSystemConfiguration) throws Exception {
+    RequestRateLimiter rateLimiter = RequestRateLimiter.get(
+        Hashing.sha256().hashString(apiKey, StandardCharsets.UTF_8).toString(),
+        connectedSystemConfiguration.getValue(RATE_LIMIT_KEY),
+        connectedSystemConfiguration.getValue(RATE_LIMIT_BURST_KEY));
+    Integer rateLimitMaxWaitMs = connectedSystemConfiguration.getValue(RATE_LIMIT_MAX_WAIT_KEY);
+
+    HttpPost post = createRequest(images, apiKey);
+    CloseableHttpClient httpClient = TextDetectionConnectionPool.getClient(connectedSystemConfiguration);
+
+    // Make a REST call to Google Text Detection endpoint. Annotating an image has no side effects, so the
+    // request is safe to retry when Google is briefly unavailable. Every attempt, retries included, waits for
+    // a turn under the rate limit configured on the connected system, if any
+    CloseableHttpResponse httpResponse = new ResilientRequestExecutor().execute(httpClient, post,
+        () -> rateLimiter.acquire(rateLimitMaxWaitMs));
+    try {
+      int statusCode = httpResponse.getStatusLine().getStatusCode();
+      if (statusCode != HttpStatus.SC_OK) {
+        // Google explains the failure in the error of the body, such as an invalid API key
+        String message = null;
+        if (httpResponse.getEntity() != null) {
+          try (InputStream content = httpResponse.getEntity().getContent()) {
+            message = VisionResponseReader.readRequestError(content);
+          }
+        }
+        throw new RuntimeException("Google returned HTTP " + statusCode + (message == null ? "" : ": " + message));
+      }
+
+      try (InputStream content = httpResponse.getEntity().getContent()) {
+        return VisionResponseReader.read(content);
+      }
+    } finally {
+      // Reads whatever is left so the connection goes back to the pool instead of being closed
+      EntityUtils.consumeQuietly(httpResponse.getEntity());
+      httpResponse.close();
+    }
+  }
+
+  private HttpPost createRequest(List<VisionImage> images, String apiKey) throws URISyntaxException {
     URIBuilder builder = new URIBuilder(IMAGE_ANNOTATE_ENDPOINT);
     builder.addParameter(PARAMETER_KEY, apiKey);
 
     HttpPost httpPost = new HttpPost(builder.build());
-    httpPost.setEntity(new StringEntity(String.format(REQUEST_ENTITY, imageUrl)));
+    VisionRequestEntity entity = new VisionRequestEntity(images);
+    // Only bodies made of URLs are compressed: small ones would cost more than they save, and base64 of an
+    // already compressed image barely shrinks
+    long size = 0;
+    boolean inline = false;
+    for (VisionImage image : images) {
+      size += image.getRequestSize();
+      inline |= image.isInline();
+    }
+    httpPost.setEntity(!inline && size > GZIP_THRESHOLD_BYTES ? new GzipCompressingEntity(entity) : entity);
     return httpPost;
   }
 
+  // Images sent to Google in one call, at most 16 whose bodies stay under Google's request size limit
+  private static final class Group {
+    private final List<Integer> indexes = new ArrayList<>();
+    private final List<PreparedImage> images = new ArrayList<>();
+    private long requestSize;
+    private Future<List<VisionResponseReader.ImageResult>> call;
+
+    private boolean canAdd(PreparedImage prepared) {
+      return indexes.isEmpty() || (indexes.size() < MAX_IMAGES_PER_REQUEST &&
+          requestSize + prepared.image.getRequestSize() <= MAX_REQUEST_BYTES);
+    }
+
+    private void add(int index, PreparedImage prepared) {
+      indexes.add(index);
+      images.add(prepared);
+      requestSize += prepared.image.getRequestSize();
+    }
+  }
+
+  private static final class PreparedImage {
+    private final VisionImage image;
+    private final TextDetectionResultCache.Lookup lookup;
+
+    private PreparedImage(VisionImage image, TextDetectionResultCache.Lookup lookup) {
+      this.image = image;
+      this.lookup = lookup;
+    }
+  }
+
 }
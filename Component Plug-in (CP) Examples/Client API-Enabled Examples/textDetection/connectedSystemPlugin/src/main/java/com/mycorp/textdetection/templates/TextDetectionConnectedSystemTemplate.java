@@ -13,6 +13,15 @@ import com.appian.connectedsystems.templateframework.sdk.TemplateId;
 public class TextDetectionConnectedSystemTemplate extends SimpleConnectedSystemTemplate {
 
   public static final String API_KEY = "apiKey";
+  public static final String CONNECT_TIMEOUT_KEY = "connectTimeout";
+  public static final String SOCKET_TIMEOUT_KEY = "socketTimeout";
+  public static final String SEND_IMAGES_INLINE_KEY = "sendImagesInline";
+  public static final String MAX_IMAGE_DIMENSION_KEY = "maxImageDimension";
+  public static final String RESULT_CACHE_ON_DISK_KEY = "resultCacheOnDisk";
+  public static final String RESULT_CACHE_DISK_LIMIT_KEY = "resultCacheDiskLimitMb";
+  public static final String RATE_LIMIT_KEY = "rateLimit";
+  public static final String RATE_LIMIT_BURST_KEY = "rateLimitBurst";
+  public static final String RATE_LIMIT_MAX_WAIT_KEY = "rateLimitMaxWait";
 
   @Override
   protected SimpleConfiguration getConfiguration(
@@ -23,6 +32,52 @@ public class TextDetectionConnectedSystemTemplate extends SimpleConnectedSystemT
             .label("API Key")
             .isImportCustomizable(true)
             .isRequired(true)
+            .build(),
+        // Connections to Google are pooled and shared by every detection using this connected system.
+        // These timeouts apply to that shared pool
+        integerProperty(CONNECT_TIMEOUT_KEY)
+            .label("Connect Timeout (ms)")
+            .instructionText("Defaults to " + TextDetectionConnectionPool.DEFAULT_CONNECT_TIMEOUT_MS + " ms if left blank")
+            .build(),
+        integerProperty(SOCKET_TIMEOUT_KEY)
+            .label("Read Timeout (ms)")
+            .instructionText("Defaults to " + TextDetectionConnectionPool.DEFAULT_SOCKET_TIMEOUT_MS + " ms if left blank")
+            .build(),
+        // Keeps calls under the Vision quota of the key. The limit is enforced on each node, so on a cluster
+        // it should be that node's share of the quota
+        integerProperty(RATE_LIMIT_KEY)
+            .label("Rate Limit (requests/second)")
+            .instructionText("Text detection requests sent to Google per second with this API key. No limit if left blank")
+            .build(),
+        integerProperty(RATE_LIMIT_BURST_KEY)
+            .label("Rate Limit Burst")
+            .instructionText("Requests that may be sent at once after a quiet period. Defaults to the rate limit if left blank")
+            .build(),
+        integerProperty(RATE_LIMIT_MAX_WAIT_KEY)
+            .label("Rate Limit Max Wait (ms)")
+            .instructionText("Requests that would wait longer than this for the rate limit fail instead. Defaults to " +
+                RequestRateLimiter.DEFAULT_MAX_WAIT_MS + " ms if left blank")
+            .build(),
+        // Inline images are fetched by Appian, for images that Google cannot reach
+        booleanProperty(SEND_IMAGES_INLINE_KEY)
+            .label("Send Images Inline")
+            .instructionText("Fetch images from Appian and send their content to Google instead of their URL. " +
+                "Only http and https URLs of public hosts are fetched")
+            .build(),
+        integerProperty(MAX_IMAGE_DIMENSION_KEY)
+            .label("Max Image Dimension (pixels)")
+            .instructionText("Inline images wider or taller than this are downscaled before being sent, " +
+                "only JPEG, PNG, GIF and BMP images can be sent when it is set. Not downscaled if left blank")
+            .build(),
+        // Results are always cached in memory, the disk adds a larger tier that survives restarts
+        booleanProperty(RESULT_CACHE_ON_DISK_KEY)
+            .label("Cache Results on Disk")
+            .instructionText("Also cache detected text in the server's temporary directory")
+            .build(),
+        integerProperty(RESULT_CACHE_DISK_LIMIT_KEY)
+            .label("Result Cache Disk Limit (MB)")
+            .instructionText("Least recently used results are deleted beyond this size. Defaults to " +
+                TextDetectionResultCache.DEFAULT_DISK_LIMIT_MB + " MB if left blank")
             .build()
     );
   }
@@ -0,0 +1,159 @@
+package com.mycorp.textdetection.templates;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import com.appian.connectedsystems.simplified.sdk.configuration.SimpleConfiguration;
+
+/**
+ * Holds the pooled HTTP clients used to call the Vision API.
+ *
+ * Every detection used to build its own HttpClient, which opened a new socket and did a TLS handshake per
+ * image and never closed it. One client backed by a {@link PoolingHttpClientConnectionManager} is now kept per
+ * distinct timeout setting of the connected system, and all detections lease their connections from it.
+ * Responses are decompressed transparently when Google gzips them.
+ *
+ * Images sent inline are fetched through a separate client, which only connects to the addresses that
+ * {@link ImageUrlValidator#DNS_RESOLVER} allows and does not follow redirects itself.
+ */
+final class TextDetectionConnectionPool {
+
+  static final int DEFAULT_CONNECT_TIMEOUT_MS = 5_000;
+  static final int DEFAULT_SOCKET_TIMEOUT_MS = 30_000;
+  //How long a detection waits for a free connection when every pooled one is in use
+  private static final int CONNECTION_REQUEST_TIMEOUT_MS = 2_000;
+
+  //Every request goes to vision.googleapis.com, so the per route limit is what matters
+  private static final int MAX_TOTAL_CONNECTIONS = 50;
+  private static final int MAX_CONNECTIONS_PER_ROUTE = 20;
+  //Used when Google does not send a Keep-Alive header
+  private static final long DEFAULT_KEEP_ALIVE_MS = TimeUnit.SECONDS.toMillis(30);
+  private static final long MAX_IDLE_SECONDS = 30;
+  private static final int VALIDATE_AFTER_INACTIVITY_MS = 2_000;
+
+  private static final ConnectionKeepAliveStrategy KEEP_ALIVE_STRATEGY = (response, context) -> {
+    long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+    return keepAlive > 0 ? keepAlive : DEFAULT_KEEP_ALIVE_MS;
+  };
+
+  private static final ConcurrentMap<Settings,Pool> POOLS = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<Settings,Pool> IMAGE_POOLS = new ConcurrentHashMap<>();
+
+  private TextDetectionConnectionPool() {
+  }
+
+  /**
+   * Returns the shared client for the timeouts configured on the connected system. The client must not be
+   * closed by callers; connections go back to the pool once the response is consumed or closed.
+   */
+  static CloseableHttpClient getClient(SimpleConfiguration connectedSystemConfiguration) {
+    return getPool(connectedSystemConfiguration).client;
+  }
+
+  /**
+   * Returns the shared client that inline images are fetched with, which refuses to connect to local and
+   * private network addresses. Redirects are returned rather than followed, so that each is validated.
+   */
+  static CloseableHttpClient getImageClient(SimpleConfiguration connectedSystemConfiguration) {
+    return IMAGE_POOLS.computeIfAbsent(getSettings(connectedSystemConfiguration),
+        settings -> new Pool(settings, ImageUrlValidator.DNS_RESOLVER)).client;
+  }
+
+  /**
+   * Leased, pending and available connections of the pool used by the connected system, for sizing it.
+   */
+  static PoolStats getStats(SimpleConfiguration connectedSystemConfiguration) {
+    return getPool(connectedSystemConfiguration).connectionManager.getTotalStats();
+  }
+
+  private static Pool getPool(SimpleConfiguration connectedSystemConfiguration) {
+    return POOLS.computeIfAbsent(getSettings(connectedSystemConfiguration), settings -> new Pool(settings, null));
+  }
+
+  private static Settings getSettings(SimpleConfiguration connectedSystemConfiguration) {
+    return new Settings(
+        valueOrDefault(connectedSystemConfiguration.getValue(TextDetectionConnectedSystemTemplate.CONNECT_TIMEOUT_KEY),
+            DEFAULT_CONNECT_TIMEOUT_MS),
+        valueOrDefault(connectedSystemConfiguration.getValue(TextDetectionConnectedSystemTemplate.SOCKET_TIMEOUT_KEY),
+            DEFAULT_SOCKET_TIMEOUT_MS));
+  }
+
+  private static int valueOrDefault(Integer value, int defaultValue) {
+    return value == null || value <= 0 ? defaultValue : value;
+  }
+
+  private static final class Pool {
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient client;
+
+    // Hosts are resolved with the system resolver, unless a dnsResolver is given
+    private Pool(Settings settings, DnsResolver dnsResolver) {
+      connectionManager = new PoolingHttpClientConnectionManager(RegistryBuilder.<ConnectionSocketFactory>create()
+          .register("http", PlainConnectionSocketFactory.getSocketFactory())
+          .register("https", SSLConnectionSocketFactory.getSocketFactory())
+          .build(), dnsResolver);
+      connectionManager.setMaxTotal(MAX_TOTAL_CONNECTIONS);
+      connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+      connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MS);
+
+      RequestConfig requestConfig = RequestConfig.custom()
+          .setConnectTimeout(settings.connectTimeoutMs)
+          .setConnectionRequestTimeout(CONNECTION_REQUEST_TIMEOUT_MS)
+          .setSocketTimeout(settings.socketTimeoutMs)
+          .setRedirectsEnabled(dnsResolver == null)
+          .build();
+
+      //Content compression is on by default: requests ask for gzip and gzipped responses are inflated
+      client = HttpClients.custom()
+          .setConnectionManager(connectionManager)
+          .setDefaultRequestConfig(requestConfig)
+          .setKeepAliveStrategy(KEEP_ALIVE_STRATEGY)
+          //Closes expired and idle connections in the background so stale sockets are not leased
+          .evictExpiredConnections()
+          .evictIdleConnections(MAX_IDLE_SECONDS, TimeUnit.SECONDS)
+          .build();
+    }
+  }
+
+  private static final class Settings {
+    private final int connectTimeoutMs;
+    private final int socketTimeoutMs;
+
+    private Settings(int connectTimeoutMs, int socketTimeoutMs) {
+      this.connectTimeoutMs = connectTimeoutMs;
+      this.socketTimeoutMs = socketTimeoutMs;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Settings)) {
+        return false;
+      }
+      Settings that = (Settings)o;
+      return connectTimeoutMs == that.connectTimeoutMs && socketTimeoutMs == that.socketTimeoutMs;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(connectTimeoutMs, socketTimeoutMs);
+    }
+  }
+}
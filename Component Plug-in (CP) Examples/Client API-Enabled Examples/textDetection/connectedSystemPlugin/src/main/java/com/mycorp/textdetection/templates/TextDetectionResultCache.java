@@ -0,0 +1,331 @@
+package com.mycorp.textdetection.templates;
+
+import static com.mycorp.textdetection.templates.TextDetectionConnectedSystemTemplate.API_KEY;
+import static com.mycorp.textdetection.templates.TextDetectionConnectedSystemTemplate.RESULT_CACHE_DISK_LIMIT_KEY;
+import static com.mycorp.textdetection.templates.TextDetectionConnectedSystemTemplate.RESULT_CACHE_ON_DISK_KEY;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.appian.connectedsystems.simplified.sdk.configuration.SimpleConfiguration;
+import com.google.common.cache.Cache;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.mycorp.textdetection.OutputResponse;
+
+/**
+ * Remembers the text found in images so that detecting the same image again does not call Google.
+ *
+ * Results are keyed by image URL, or by a hash of the content for images that are sent inline, along with a
+ * hash of the API key so that connected systems never see each other's results. Content keyed results never
+ * go stale. URL keyed results are kept for ten minutes, since the image behind a URL may change. The cache
+ * never requests the images itself, so looking an image up only ever reaches Google.
+ *
+ * Results are held in memory up to a fixed size. When disk caching is turned on for the connected system, they
+ * are also written to a directory of the plug-in's own under the server's temporary directory, so they survive
+ * restarts and memory evictions; the least recently used files are deleted once the directory grows over its
+ * limit. The directory is not configurable, so that the plug-in never writes or deletes files anywhere else.
+ */
+final class TextDetectionResultCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(TextDetectionResultCache.class);
+
+  static final int DEFAULT_DISK_LIMIT_MB = 256;
+
+  // Results of URL keyed images are kept this long
+  private static final long URL_TTL_MS = TimeUnit.MINUTES.toMillis(10);
+  private static final long MAX_MEMORY_BYTES = 64L * 1024 * 1024;
+  private static final int DISK_FORMAT_VERSION = 2;
+  private static final String URL_PREFIX = "url:";
+  private static final String CONTENT_PREFIX = "sha256:";
+  // Each word is stored as at least its 2 byte length, and its box as four ints
+  private static final int MIN_BYTES_PER_WORD = 2 + 4 * 4;
+
+  private static final Cache<String,Entry> MEMORY = CacheBuilder.newBuilder()
+      .maximumWeight(MAX_MEMORY_BYTES)
+      .weigher((String key, Entry entry) -> entry.weight)
+      .build();
+
+  // Created on first use, so the directory only exists once a connected system turns disk caching on
+  private static final Supplier<DiskTier> DISK_TIER = Suppliers.memoize(() ->
+      new DiskTier(Paths.get(System.getProperty("java.io.tmpdir"), "textdetection-result-cache").toAbsolutePath()));
+
+  // Hash of the API key, which every key of this connected system starts with
+  private final String keyPrefix;
+  private final DiskTier diskTier;
+
+  private TextDetectionResultCache(String keyPrefix, DiskTier diskTier) {
+    this.keyPrefix = keyPrefix;
+    this.diskTier = diskTier;
+  }
+
+  static TextDetectionResultCache forConfiguration(SimpleConfiguration connectedSystemConfiguration) {
+    String apiKey = connectedSystemConfiguration.getValue(API_KEY);
+    String keyPrefix = Hashing.sha256().hashString(apiKey == null ? "" : apiKey, StandardCharsets.UTF_8) + "/";
+    Boolean onDisk = connectedSystemConfiguration.getValue(RESULT_CACHE_ON_DISK_KEY);
+    if (!Boolean.TRUE.equals(onDisk)) {
+      return new TextDetectionResultCache(keyPrefix, null);
+    }
+    Integer limitMb = connectedSystemConfiguration.getValue(RESULT_CACHE_DISK_LIMIT_KEY);
+    long maxBytes = (limitMb == null || limitMb <= 0 ? DEFAULT_DISK_LIMIT_MB : limitMb) * 1024L * 1024L;
+    DiskTier diskTier = DISK_TIER.get();
+    diskTier.maxBytes = maxBytes;
+    return new TextDetectionResultCache(keyPrefix, diskTier);
+  }
+
+  /**
+   * Returns the cached result for the image if it is younger than the TTL of URL keyed results
+   */
+  Lookup lookup(String imageUrl) {
+    String key = URL_PREFIX + keyPrefix + imageUrl;
+    Entry entry = get(key);
+    if (entry != null && System.currentTimeMillis() - entry.storedAt >= URL_TTL_MS) {
+      invalidate(key);
+      entry = null;
+    }
+    return new Lookup(key, entry != null ? entry.outputResponse : null);
+  }
+
+  /**
+   * Returns the cached result for an image sent inline, identified by {@code contentKey}, if there is one.
+   */
+  Lookup lookupContent(String contentKey) {
+    String key = CONTENT_PREFIX + keyPrefix + contentKey;
+    Entry entry = get(key);
+    return new Lookup(key, entry != null ? entry.outputResponse : null);
+  }
+
+  private Entry get(String key) {
+    Entry entry = MEMORY.getIfPresent(key);
+    if (entry == null && diskTier != null) {
+      entry = diskTier.read(key);
+      if (entry != null) {
+        MEMORY.put(key, entry);
+      }
+    }
+    return entry;
+  }
+
+  void put(Lookup lookup, OutputResponse outputResponse) {
+    Entry entry = new Entry(outputResponse, System.currentTimeMillis());
+    MEMORY.put(lookup.key, entry);
+    if (diskTier != null) {
+      diskTier.write(lookup.key, entry);
+    }
+  }
+
+  private void invalidate(String key) {
+    MEMORY.invalidate(key);
+    if (diskTier != null) {
+      diskTier.delete(key);
+    }
+  }
+
+  /**
+   * The cached result of an image, or what is needed to cache it once it has been detected.
+   */
+  static final class Lookup {
+    private final String key;
+    private final OutputResponse outputResponse;
+
+    private Lookup(String key, OutputResponse outputResponse) {
+      this.key = key;
+      this.outputResponse = outputResponse;
+    }
+
+    boolean isHit() {
+      return outputResponse != null;
+    }
+
+    OutputResponse getOutputResponse() {
+      return outputResponse;
+    }
+  }
+
+  private static final class Entry {
+    private final OutputResponse outputResponse;
+    private final long storedAt;
+    private final int weight;
+
+    private Entry(OutputResponse outputResponse, long storedAt) {
+      this.outputResponse = outputResponse;
+      this.storedAt = storedAt;
+      // Rough size in memory: each word's characters plus its String and its four packed ints
+      int weight = 128;
+      for (String word : outputResponse.textFound) {
+        weight += 56 + (word != null ? word.length() * 2 : 0);
+      }
+      this.weight = weight;
+    }
+  }
+
+  private static final class DiskTier {
+    private final Path directory;
+    private final AtomicLong size = new AtomicLong();
+    private volatile long maxBytes;
+
+    private DiskTier(Path directory) {
+      this.directory = directory;
+      try {
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.ocr")) {
+          for (Path file : files) {
+            size.addAndGet(Files.size(file));
+          }
+        }
+      } catch (IOException e) {
+        LOG.warn("Cannot use {} to cache text detection results", directory, e);
+      }
+    }
+
+    private Entry read(String key) {
+      Path file = file(key);
+      if (!Files.exists(file)) {
+        return null;
+      }
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+        if (in.readInt() != DISK_FORMAT_VERSION) {
+          return null;
+        }
+        long storedAt = in.readLong();
+        int count = in.readInt();
+        // A corrupt count would otherwise size the arrays below, so it has to fit in what the file holds
+        if (count < 0 || count > Files.size(file) / MIN_BYTES_PER_WORD) {
+          throw new IOException("Corrupt cached text detection result " + file);
+        }
+        String[] words = new String[count];
+        int[] boxes = new int[count * 4];
+        for (int i = 0; i < count; i++) {
+          words[i] = in.readUTF();
+        }
+        for (int i = 0; i < boxes.length; i++) {
+          boxes[i] = in.readInt();
+        }
+        // The modification time orders files for eviction, so reading a file counts as using it
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        return new Entry(OutputResponse.of(words, boxes, count), storedAt);
+      } catch (IOException e) {
+        delete(key);
+        return null;
+      }
+    }
+
+    private void write(String key, Entry entry) {
+      Path file = file(key);
+      Path temp = null;
+      try {
+        // Written to a temporary file first so that readers never see a partly written entry
+        temp = Files.createTempFile(directory, "entry", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+          List<String> words = entry.outputResponse.textFound;
+          List<OutputResponse.BoundingBox> boxes = entry.outputResponse.boundingBoxes;
+          out.writeInt(DISK_FORMAT_VERSION);
+          out.writeLong(entry.storedAt);
+          out.writeInt(words.size());
+          for (String word : words) {
+            out.writeUTF(word != null ? word : "");
+          }
+          for (OutputResponse.BoundingBox box : boxes) {
+            out.writeInt(box.x);
+            out.writeInt(box.y);
+            out.writeInt(box.width);
+            out.writeInt(box.height);
+          }
+        }
+        long previousSize = Files.exists(file) ? Files.size(file) : 0;
+        long newSize = Files.size(temp);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (size.addAndGet(newSize - previousSize) > maxBytes) {
+          evict();
+        }
+      } catch (IOException e) {
+        LOG.warn("Cannot write text detection result to {}", directory, e);
+        deleteQuietly(temp);
+      }
+    }
+
+    private void delete(String key) {
+      Path file = file(key);
+      try {
+        long fileSize = Files.exists(file) ? Files.size(file) : 0;
+        if (Files.deleteIfExists(file)) {
+          size.addAndGet(-fileSize);
+        }
+      } catch (IOException e) {
+        LOG.warn("Cannot delete cached text detection result {}", file, e);
+      }
+    }
+
+    // Deletes the least recently used files until the directory is back to 90% of its limit
+    private synchronized void evict() {
+      if (size.get() <= maxBytes) {
+        return;
+      }
+      List<Path> files = new ArrayList<>();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.ocr")) {
+        stream.forEach(files::add);
+      } catch (IOException e) {
+        LOG.warn("Cannot list cached text detection results in {}", directory, e);
+        return;
+      }
+      files.sort(Comparator.comparingLong(DiskTier::lastModified));
+      long target = maxBytes / 10 * 9;
+      for (Path file : files) {
+        if (size.get() <= target) {
+          break;
+        }
+        try {
+          long fileSize = Files.size(file);
+          if (Files.deleteIfExists(file)) {
+            size.addAndGet(-fileSize);
+          }
+        } catch (IOException e) {
+          // Deleted by another node sharing the directory
+        }
+      }
+    }
+
+    private Path file(String key) {
+      return directory.resolve(Hashing.sha256().hashString(key, StandardCharsets.UTF_8) + ".ocr");
+    }
+
+    private static void deleteQuietly(Path file) {
+      if (file == null) {
+        return;
+      }
+      try {
+        Files.deleteIfExists(file);
+      } catch (IOException e) {
+        // Left for the operating system to clean up
+      }
+    }
+
+    private static long lastModified(Path file) {
+      try {
+        return Files.getLastModifiedTime(file).toMillis();
+      } catch (IOException e) {
+        return 0;
+      }
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package com.mycorp.textdetection.templates;
+
+import com.mycorp.textdetection.OutputResponse;
+
+/**
+ * One image of a Vision annotate request: either the URL Google fetches the image from, or the image content
+ * itself along with how much it was downscaled before being sent.
+ */
+final class VisionImage {
+
+  // JSON that surrounds each image in the request, used to estimate request sizes
+  private static final int REQUEST_OVERHEAD_BYTES = 200;
+
+  private final String imageUrl;
+  private final byte[] content;
+  private final String contentHash;
+  private final double scaleBack;
+
+  private VisionImage(String imageUrl, byte[] content, String contentHash, double scaleBack) {
+    this.imageUrl = imageUrl;
+    this.content = content;
+    this.contentHash = contentHash;
+    this.scaleBack = scaleBack;
+  }
+
+  static VisionImage byUrl(String imageUrl) {
+    return new VisionImage(imageUrl, null, null, 1);
+  }
+
+  /**
+   * @param contentHash hash of the image as it was fetched, before any downscaling
+   * @param scaleBack factor that takes coordinates in the sent image back to the original one
+   */
+  static VisionImage inline(String imageUrl, byte[] content, String contentHash, double scaleBack) {
+    return new VisionImage(imageUrl, content, contentHash, scaleBack);
+  }
+
+  boolean isInline() {
+    return content != null;
+  }
+
+  String getImageUrl() {
+    return imageUrl;
+  }
+
+  byte[] getContent() {
+    return content;
+  }
+
+  String getContentHash() {
+    return contentHash;
+  }
+
+  // Size this image adds to the request body, base64 makes content a third larger
+  long getRequestSize() {
+    return REQUEST_OVERHEAD_BYTES + (content != null ? (content.length + 2) / 3 * 4L : imageUrl.length());
+  }
+
+  /**
+   * Moves the boxes found in the sent image back to where they are in the original one.
+   */
+  OutputResponse restore(OutputResponse outputResponse) {
+    return scaleBack == 1 ? outputResponse : outputResponse.scale(scaleBack);
+  }
+}
@@ -0,0 +1,93 @@
+package com.mycorp.textdetection.templates;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Body of a Vision annotate request with one text detection request per image.
+ *
+ * The body is written straight to the connection. Inline images are base64 encoded by the JSON generator as
+ * they are written, so the encoded image is never held in memory as a String. The body can be written more
+ * than once, so requests can be retried.
+ */
+final class VisionRequestEntity extends AbstractHttpEntity {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory()
+      .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+  private final List<VisionImage> images;
+
+  VisionRequestEntity(List<VisionImage> images) {
+    this.images = images;
+    setContentType(ContentType.APPLICATION_JSON.toString());
+  }
+
+  @Override
+  public void writeTo(OutputStream outputStream) throws IOException {
+    try (JsonGenerator generator = JSON_FACTORY.createGenerator(outputStream)) {
+      generator.writeStartObject();
+      generator.writeArrayFieldStart("requests");
+      for (VisionImage image : images) {
+        generator.writeStartObject();
+        generator.writeObjectFieldStart("image");
+        if (image.isInline()) {
+          generator.writeFieldName("content");
+          generator.writeBinary(image.getContent());
+        } else {
+          generator.writeObjectFieldStart("source");
+          generator.writeStringField("imageUri", image.getImageUrl());
+          generator.writeEndObject();
+        }
+        generator.writeEndObject();
+
+        generator.writeArrayFieldStart("features");
+        generator.writeStartObject();
+        generator.writeStringField("type", "TEXT_DETECTION");
+        generator.writeEndObject();
+        generator.writeEndArray();
+
+        generator.writeObjectFieldStart("imageContext");
+        generator.writeArrayFieldStart("languageHints");
+        generator.writeString("en-t-i0-handwrit");
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.writeEndObject();
+      }
+      generator.writeEndArray();
+      generator.writeEndObject();
+    }
+  }
+
+  // Only used by callers that want the body as a stream, requests are sent through writeTo
+  @Override
+  public InputStream getContent() throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    writeTo(buffer);
+    return new ByteArrayInputStream(buffer.toByteArray());
+  }
+
+  @Override
+  public long getContentLength() {
+    return -1;
+  }
+
+  @Override
+  public boolean isRepeatable() {
+    return true;
+  }
+
+  @Override
+  public boolean isStreaming() {
+    return false;
+  }
+}
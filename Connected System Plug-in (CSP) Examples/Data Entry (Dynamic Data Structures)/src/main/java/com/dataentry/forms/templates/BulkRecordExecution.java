@@ -0,0 +1,240 @@
+package com.dataentry.forms.templates;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Validates a list of records against a form and sends the valid ones to the external system in batches.
+ *
+ * The JSON is first checked from end to end without building any records, so that malformed JSON is refused
+ * before anything is sent and a retry cannot send the same records twice. The records are then read one at a
+ * time, so only the batch being filled is held as records. Each record gets an outcome: invalid records are
+ * reported with the reason and never sent, and the records of a batch the external system rejects are
+ * reported with its error.
+ *
+ * When there is no records URL, as with the example schema, batches are encoded but not sent, the same way
+ * a single record is only echoed back.
+ */
+final class BulkRecordExecution {
+
+  static final int DEFAULT_BATCH_SIZE = 500;
+  static final int MAX_BATCH_SIZE = 10_000;
+
+  private static final int CONNECT_TIMEOUT_MS = 5_000;
+  //The external system writes a whole batch before it answers
+  private static final int SOCKET_TIMEOUT_MS = 120_000;
+  //Bulk integrations running at the same time wait this long for a connection before failing the batch
+  private static final int CONNECTION_REQUEST_TIMEOUT_MS = 30_000;
+
+  //Kept apart from the schema client, so that slow batch writes never hold up configuration refreshes
+  private static final CloseableHttpClient CLIENT = HttpClients.custom()
+      .setDefaultRequestConfig(RequestConfig.custom()
+          .setConnectTimeout(CONNECT_TIMEOUT_MS)
+          .setConnectionRequestTimeout(CONNECTION_REQUEST_TIMEOUT_MS)
+          .setSocketTimeout(SOCKET_TIMEOUT_MS)
+          .build())
+      .setMaxConnTotal(32)
+      .setMaxConnPerRoute(8)
+      .evictIdleConnections(30, TimeUnit.SECONDS)
+      .build();
+
+  //Decimal records keep every digit they were given rather than being rounded to a double
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+      .enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+
+  private final FormSchema form;
+  private final RecordBatchEntity.Format format;
+  private final int batchSize;
+  private final String recordsUrl;
+
+  private final List<Map<String,Object>> outcomes = new ArrayList<>();
+  private final List<JsonNode> batch = new ArrayList<>();
+  private final List<Integer> batchIndexes = new ArrayList<>();
+  private int sentCount;
+  private int invalidCount;
+  private int failedCount;
+  private int batchCount;
+  private long bytesSent;
+  private long elapsedNanos;
+
+  BulkRecordExecution(FormSchema form, RecordBatchEntity.Format format, int batchSize, String recordsUrl) {
+    this.form = form;
+    this.format = format;
+    this.batchSize = Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE));
+    this.recordsUrl = recordsUrl;
+  }
+
+  /**
+   * Processes the records, a JSON array of objects keyed by field id. Throws if recordsJson is not valid JSON
+   * or not an array, in which case nothing is sent.
+   */
+  void execute(String recordsJson) throws IOException {
+    if (recordsJson == null) {
+      throw new IOException("No records were given");
+    }
+    long start = System.nanoTime();
+    try {
+      checkSyntax(recordsJson);
+      sendRecords(recordsJson);
+    } finally {
+      elapsedNanos = System.nanoTime() - start;
+    }
+  }
+
+  //Reads every token of the array, so any syntax error is found, but skips over the records without building them
+  private static void checkSyntax(String recordsJson) throws IOException {
+    try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(recordsJson)) {
+      if (parser.nextToken() != JsonToken.START_ARRAY) {
+        throw new IOException("The records must be a JSON array");
+      }
+      JsonToken token;
+      while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+        if (token == null) {
+          throw new IOException("The records JSON ends before the end of the array");
+        }
+        parser.skipChildren();
+      }
+    }
+  }
+
+  private void sendRecords(String recordsJson) throws IOException {
+    try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(recordsJson)) {
+      //The array was checked by checkSyntax
+      parser.nextToken();
+      while (parser.nextToken() != JsonToken.END_ARRAY) {
+        JsonNode record = parser.readValueAsTree();
+        int index = outcomes.size();
+        outcomes.add(null);
+
+        String error = form.validate(record);
+        if (error != null) {
+          invalidCount++;
+          outcomes.set(index, outcome(index, error));
+          continue;
+        }
+        batch.add(record);
+        batchIndexes.add(index);
+        if (batch.size() == batchSize) {
+          sendBatch();
+        }
+      }
+      if (!batch.isEmpty()) {
+        sendBatch();
+      }
+    }
+  }
+
+  private void sendBatch() {
+    RecordBatchEntity entity = new RecordBatchEntity(batch, format);
+    String error = null;
+    try {
+      bytesSent += recordsUrl == null ? measure(entity) : post(entity);
+      sentCount += batch.size();
+    } catch (IOException e) {
+      error = e.getMessage();
+      failedCount += batch.size();
+    }
+    batchCount++;
+    for (int index : batchIndexes) {
+      outcomes.set(index, outcome(index, error));
+    }
+    //The entity is done with, so the lists can be reused for the next batch
+    batch.clear();
+    batchIndexes.clear();
+  }
+
+  private static long measure(HttpEntity entity) throws IOException {
+    CountingOutputStream counter = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+    entity.writeTo(counter);
+    return counter.getByteCount();
+  }
+
+  private long post(HttpEntity entity) throws IOException {
+    CountingEntity countingEntity = new CountingEntity(entity);
+    HttpPost post = new HttpPost(recordsUrl);
+    post.setEntity(countingEntity);
+    try (CloseableHttpResponse response = CLIENT.execute(post)) {
+      int statusCode = response.getStatusLine().getStatusCode();
+      String body = response.getEntity() == null ? "" : EntityUtils.toString(response.getEntity());
+      if (statusCode / 100 != 2) {
+        throw new IOException("The external system rejected the batch with status code " + statusCode +
+            (body.isEmpty() ? "" : ": " + body));
+      }
+    }
+    return countingEntity.byteCount;
+  }
+
+  private static Map<String,Object> outcome(int index, String error) {
+    Map<String,Object> outcome = new LinkedHashMap<>();
+    outcome.put("index", index);
+    outcome.put("success", error == null);
+    if (error != null) {
+      outcome.put("error", error);
+    }
+    return outcome;
+  }
+
+  /**
+   * The result of the integration: the counts, and one outcome per record in the order they were given
+   */
+  Map<String,Object> getResult() {
+    Map<String,Object> result = new LinkedHashMap<>();
+    result.put("recordCount", outcomes.size());
+    result.put("sentCount", sentCount);
+    result.put("invalidCount", invalidCount);
+    result.put("failedCount", failedCount);
+    result.put("outcomes", outcomes);
+    return result;
+  }
+
+  Map<String,Object> getDiagnostics() {
+    Map<String,Object> diagnostics = new LinkedHashMap<>();
+    diagnostics.put("Records URL", recordsUrl == null ? "None, records are validated and encoded only" : recordsUrl);
+    diagnostics.put("Format", format.name());
+    diagnostics.put("Batch Size", batchSize);
+    diagnostics.put("Batches", batchCount);
+    diagnostics.put("Bytes Sent", bytesSent);
+    //Only a timer coarser than the whole execution reads zero
+    diagnostics.put("Records/Second", elapsedNanos <= 0 ? "Not measurable" :
+        outcomes.size() * 1_000_000_000L / elapsedNanos);
+    return diagnostics;
+  }
+
+  //Counts the bytes of the body as it is written to the connection, since its length is not known up front
+  private static final class CountingEntity extends HttpEntityWrapper {
+    private long byteCount;
+
+    private CountingEntity(HttpEntity entity) {
+      super(entity);
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+      CountingOutputStream counter = new CountingOutputStream(outputStream);
+      super.writeTo(counter);
+      byteCount = counter.getByteCount();
+    }
+  }
+}
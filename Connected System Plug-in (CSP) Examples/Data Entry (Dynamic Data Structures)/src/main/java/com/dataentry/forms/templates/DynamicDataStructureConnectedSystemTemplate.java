@@ -8,11 +8,25 @@ import com.appian.connectedsystems.templateframework.sdk.TemplateId;
 @TemplateId(name="DynamicDataStructureConnectedSystemTemplate")
 public class DynamicDataStructureConnectedSystemTemplate extends SimpleConnectedSystemTemplate {
 
+  static final String SCHEMA_LOCATION_KEY = "schemaLocation";
+  static final String SCHEMA_TTL_KEY = "schemaCacheTtlSeconds";
+
   @Override
   protected SimpleConfiguration getConfiguration(
       SimpleConfiguration simpleConfiguration, ExecutionContext executionContext) {
-    //The connected system has no fields, therefore nothing to do
-    return simpleConfiguration;
+    return simpleConfiguration.setProperties(
+        //Where the external system's data structures are read from
+        textProperty(SCHEMA_LOCATION_KEY)
+        .label("Schema Location")
+        .instructionText("http or https URL of the data structures JSON. Forms are read from <URL>/<form name>. " +
+            "The example schema bundled with the plug-in is used if left blank")
+        .build(),
+        integerProperty(SCHEMA_TTL_KEY)
+        .label("Schema Cache TTL (seconds)")
+        .instructionText("How long the schema is used before checking for changes in the background. Defaults to " +
+            SchemaCache.DEFAULT_TTL_SECONDS + " seconds if left blank")
+        .build()
+    );
   }
 }
 
@@ -1,19 +1,15 @@
 package com.dataentry.forms.templates;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.io.IOUtils;
-
 import com.appian.connectedsystems.simplified.sdk.SimpleIntegrationTemplate;
 import com.appian.connectedsystems.simplified.sdk.configuration.SimpleConfiguration;
 import com.appian.connectedsystems.templateframework.sdk.ExecutionContext;
+import com.appian.connectedsystems.templateframework.sdk.IntegrationError;
 import com.appian.connectedsystems.templateframework.sdk.IntegrationResponse;
 import com.appian.connectedsystems.templateframework.sdk.TemplateId;
 import com.appian.connectedsystems.templateframework.sdk.configuration.Choice;
@@ -21,10 +17,9 @@ import com.appian.connectedsystems.templateframework.sdk.configuration.PropertyD
 import com.appian.connectedsystems.templateframework.sdk.configuration.PropertyDescriptorBuilder;
 import com.appian.connectedsystems.templateframework.sdk.configuration.PropertyPath;
 import com.appian.connectedsystems.templateframework.sdk.configuration.RefreshPolicy;
+import com.appian.connectedsystems.templateframework.sdk.configuration.SystemType;
 import com.appian.connectedsystems.templateframework.sdk.configuration.TextPropertyDescriptor;
 import com.appian.connectedsystems.templateframework.sdk.diagnostics.IntegrationDesignerDiagnostic;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 
 @TemplateId(name = "DynamicDataStructureIntegrationTemplate")
@@ -39,6 +34,9 @@ public class DynamicDataStructureIntegrationTemplate extends SimpleIntegrationTe
    * In this example, it's a Data Entry plug-in that allows the user to fill an Account form or a Customer
    * form based on the selection of the form. The Integration Template will simply take in the entry values,
    * and return them to the result.
+   *
+   * In bulk mode, the integration instead takes a list of records for the selected form, validates each one
+   * against the form's field types, and sends the valid ones to the external system in batches.
    */
 
   public static final String FORM_DROPDOWN_KEY = "formDropdown";
@@ -49,9 +47,48 @@ public class DynamicDataStructureIntegrationTemplate extends SimpleIntegrationTe
   public static final String TYPE_KEY = "type";
   public static final String FormDropdownInstructionText = "Select a form to fill out";
   public static final String FORMS_DROPDOWN_LABEL = "My Corp Forms";
+  public static final String BULK_MODE_KEY = "bulkMode";
+  public static final String BULK_RECORDS_KEY = "bulkRecords";
+  public static final String BULK_FORMAT_KEY = "bulkFormat";
+  public static final String BULK_BATCH_SIZE_KEY = "bulkBatchSize";
 
   enum SUPPORTED_PROPERTY_TYPE{
-    TEXT, INTEGER, BOOLEAN
+    TEXT, INTEGER, BOOLEAN, DECIMAL, DOUBLE, DATE, DATETIME,
+    TEXT_LIST(TEXT), INTEGER_LIST(INTEGER), BOOLEAN_LIST(BOOLEAN), DECIMAL_LIST(DECIMAL), DOUBLE_LIST(DOUBLE),
+    DATE_LIST(DATE), DATETIME_LIST(DATETIME);
+
+    private static final Map<String,SUPPORTED_PROPERTY_TYPE> BY_NAME = new HashMap<>();
+
+    static {
+      for (SUPPORTED_PROPERTY_TYPE type : values()) {
+        BY_NAME.put(type.name(), type);
+      }
+    }
+
+    private final SUPPORTED_PROPERTY_TYPE itemType;
+
+    SUPPORTED_PROPERTY_TYPE() {
+      this(null);
+    }
+
+    SUPPORTED_PROPERTY_TYPE(SUPPORTED_PROPERTY_TYPE itemType) {
+      this.itemType = itemType;
+    }
+
+    /**
+     * The type of the items of a list type, null for types that are not lists
+     */
+    SUPPORTED_PROPERTY_TYPE getItemType() {
+      return itemType;
+    }
+
+    static SUPPORTED_PROPERTY_TYPE parse(String type) {
+      SUPPORTED_PROPERTY_TYPE supportedType = BY_NAME.get(type);
+      if (supportedType == null) {
+        throw new RuntimeException("Unsupported Property Type");
+      }
+      return supportedType;
+    }
   }
 
   @Override
@@ -60,18 +97,31 @@ public class DynamicDataStructureIntegrationTemplate extends SimpleIntegrationTe
       SimpleConfiguration connectedSystemConfiguration,
       PropertyPath propertyPath,
       ExecutionContext executionContext) {
-    //Here, we read the data structure from an example JSON file. In your plug-in, replace this with whatever
-    // logic you need to retrieve the data structure from your external system.
-    JsonNode externalDataTypes = getExternalDataTypes();
-    TextPropertyDescriptor formDropdown = createFormDropdown(externalDataTypes);
+    //Here, we read the data structure from the schema location of the connected system, an example JSON file
+    // by default. In your plug-in, add a SchemaProvider for whatever your external system needs. The form
+    // dropdown refreshes the configuration on every change in the designer, so the schema is cached and
+    // refreshed in the background rather than read here each time. Only the form names and the fields of the
+    // selected form are loaded
+    SchemaCache schema = getSchemaCache(connectedSystemConfiguration);
+    int ttlSeconds = getSchemaTtlSeconds(connectedSystemConfiguration);
+    TextPropertyDescriptor formDropdown = createFormDropdown(schema.getChoices(ttlSeconds));
 
-    List<PropertyDescriptor> propertyDescriptors = new ArrayList<>();
-    propertyDescriptors.add(formDropdown);
+    String formSelection = integrationConfiguration.getValue(FORM_DROPDOWN_KEY);
+    //In bulk mode the records come in a single property, so the form's fields are not shown
+    Boolean bulkMode = integrationConfiguration.getValue(BULK_MODE_KEY);
+    PropertyDescriptor[] formProperties = Boolean.TRUE.equals(bulkMode) ?
+        createBulkProperties() : schema.getFormProperties(formSelection, ttlSeconds);
 
-    List<PropertyDescriptor> formProperties = createFormPropertyDescriptorOnFormSelection(integrationConfiguration, externalDataTypes);
-    propertyDescriptors.addAll(formProperties);
+    PropertyDescriptor[] propertyDescriptors = new PropertyDescriptor[formProperties.length + 2];
+    propertyDescriptors[0] = formDropdown;
+    propertyDescriptors[1] = booleanProperty(BULK_MODE_KEY)
+        .label("Bulk Mode")
+        .instructionText("Send a list of records instead of filling out the form")
+        .refresh(RefreshPolicy.ALWAYS)
+        .build();
+    System.arraycopy(formProperties, 0, propertyDescriptors, 2, formProperties.length);
 
-    return integrationConfiguration.setProperties(propertyDescriptors.toArray(new PropertyDescriptor[0]));
+    return integrationConfiguration.setProperties(propertyDescriptors);
   }
 
   /**
@@ -84,12 +134,39 @@ public class DynamicDataStructureIntegrationTemplate extends SimpleIntegrationTe
       SimpleConfiguration integrationConfiguration,
       SimpleConfiguration connectedSystemConfiguration,
       ExecutionContext executionContext) {
+    Boolean bulkMode = integrationConfiguration.getValue(BULK_MODE_KEY);
+    if (Boolean.TRUE.equals(bulkMode)) {
+      return executeBulk(integrationConfiguration, connectedSystemConfiguration);
+    }
+
     List<PropertyDescriptor> properties = integrationConfiguration.getProperties();
+    //Decimals and dates are entered as text, the form knows how to turn them into values of their type
+    FormSchema form;
+    try {
+      form = getSchemaCache(connectedSystemConfiguration).getFormSchema(
+          integrationConfiguration.getValue(FORM_DROPDOWN_KEY), getSchemaTtlSeconds(connectedSystemConfiguration));
+    } catch (RuntimeException e) {
+      //Such as the external system being down the first time the form is loaded
+      IntegrationError error = IntegrationError.builder()
+          .title("Schema unavailable")
+          .message(e.getMessage())
+          .build();
+      return IntegrationResponse.forError(error).build();
+    }
 
     long start = System.currentTimeMillis();
     Map<String, Object> requestMap = new HashMap<>();
     for (PropertyDescriptor p : properties) {
-      requestMap.put(p.getKey(), integrationConfiguration.getValue(p.getKey()));
+      Object value = integrationConfiguration.getValue(p.getKey());
+      try {
+        requestMap.put(p.getKey(), form == null ? value : form.convert(p.getKey(), value));
+      } catch (IllegalArgumentException e) {
+        IntegrationError error = IntegrationError.builder()
+            .title("Invalid value")
+            .message(e.getMessage())
+            .build();
+        return IntegrationResponse.forError(error).build();
+      }
     }
     long end = System.currentTimeMillis();
 
@@ -102,55 +179,105 @@ public class DynamicDataStructureIntegrationTemplate extends SimpleIntegrationTe
   }
 
   /**
-   * Read the data structure json file into a JsonNode
+   * Validates the records against the selected form and sends them in batches, returning the outcome of
+   * each record
    */
-  private JsonNode getExternalDataTypes() {
-    String myCorpFormDataTypesInString = readJsonFile();
+  private IntegrationResponse executeBulk(
+      SimpleConfiguration integrationConfiguration, SimpleConfiguration connectedSystemConfiguration) {
+    String formSelection = integrationConfiguration.getValue(FORM_DROPDOWN_KEY);
+    SchemaCache schema;
+    FormSchema form;
     try {
-      JsonNode dataTypesAsJson = new ObjectMapper().readTree(myCorpFormDataTypesInString);
-      return dataTypesAsJson;
+      schema = getSchemaCache(connectedSystemConfiguration);
+      form = schema.getFormSchema(formSelection, getSchemaTtlSeconds(connectedSystemConfiguration));
+    } catch (RuntimeException e) {
+      IntegrationError error = IntegrationError.builder()
+          .title("Schema unavailable")
+          .message(e.getMessage())
+          .build();
+      return IntegrationResponse.forError(error).build();
+    }
+    if (form == null) {
+      IntegrationError error = IntegrationError.builder()
+          .title("Unknown form")
+          .message("The form " + formSelection + " is not in the schema of the external system")
+          .build();
+      return IntegrationResponse.forError(error).build();
+    }
+
+    String format = integrationConfiguration.getValue(BULK_FORMAT_KEY);
+    Integer batchSize = integrationConfiguration.getValue(BULK_BATCH_SIZE_KEY);
+    BulkRecordExecution execution = new BulkRecordExecution(form,
+        format == null ? RecordBatchEntity.Format.NDJSON : RecordBatchEntity.Format.valueOf(format),
+        batchSize == null ? BulkRecordExecution.DEFAULT_BATCH_SIZE : batchSize,
+        schema.getRecordsUrl(formSelection));
+
+    long start = System.currentTimeMillis();
+    try {
+      execution.execute(integrationConfiguration.getValue(BULK_RECORDS_KEY));
     } catch (IOException e) {
-      throw new RuntimeException(e.getMessage());
+      IntegrationError error = IntegrationError.builder()
+          .title("Invalid records")
+          .message("The records must be a JSON array of objects keyed by field id: " + e.getMessage())
+          .build();
+      return IntegrationResponse.forError(error)
+          .withDiagnostic(IntegrationDesignerDiagnostic.builder()
+              .addResponseDiagnostic(execution.getDiagnostics())
+              .addExecutionTimeDiagnostic(System.currentTimeMillis() - start)
+              .build())
+          .build();
     }
+    final IntegrationDesignerDiagnostic diagnostic = IntegrationDesignerDiagnostic.builder()
+        .addResponseDiagnostic(execution.getDiagnostics())
+        .addExecutionTimeDiagnostic(System.currentTimeMillis() - start)
+        .build();
+    return IntegrationResponse.forSuccess(execution.getResult()).withDiagnostic(diagnostic).build();
   }
 
-  /**
-   * The json file needs to be in the resources directory in order to be read properly
-   */
-  private static String readJsonFile() {
-    try (InputStream input = DynamicDataStructureIntegrationTemplate.class.getClassLoader()
-        .getResourceAsStream("com/dataentry/forms/templates/ExternalDataTypes.json")) {
-      return IOUtils.toString(input, "utf-8");
-    } catch (IOException e) {
-      throw new RuntimeException(e);
+  private PropertyDescriptor[] createBulkProperties() {
+    List<Choice> formats = new ArrayList<>();
+    for (RecordBatchEntity.Format format : RecordBatchEntity.Format.values()) {
+      formats.add(Choice.builder().name(format.name()).value(format.name()).build());
     }
+    return new PropertyDescriptor[] {
+        textProperty(BULK_RECORDS_KEY)
+            .label("Records")
+            .instructionText("JSON array of records keyed by field id, for example a!toJson(local!records)")
+            .isExpressionable(true)
+            .isRequired(true)
+            .build(),
+        dropdownProperty(BULK_FORMAT_KEY, formats)
+            .label("Batch Format")
+            .instructionText("How each batch of records is sent. Defaults to NDJSON")
+            .build(),
+        integerProperty(BULK_BATCH_SIZE_KEY)
+            .label("Batch Size")
+            .instructionText("Records sent per request, up to " + BulkRecordExecution.MAX_BATCH_SIZE +
+                ". Defaults to " + BulkRecordExecution.DEFAULT_BATCH_SIZE + " if left blank")
+            .build()
+    };
   }
 
   /**
-   * Return a list of PropertyDescriptor depending on the form selection. For example, when user selects "account"
-   * form, this reads in the "account" table data structures and create PropertyDescriptor for "Account ID" and
-   * "Account Holder"
+   * Return the cached data structures at the schema location of the connected system
    */
-  private List<PropertyDescriptor> createFormPropertyDescriptorOnFormSelection(SimpleConfiguration simpleConfiguration, JsonNode myCorpDataTypesAsJson){
-    String formSelection = simpleConfiguration.getValue(FORM_DROPDOWN_KEY);
-    if(formSelection != null) {
-      for (JsonNode dataType : myCorpDataTypesAsJson) {
-        if (formSelection.equals(dataType.get(NAME_KEY).asText())) {
-          JsonNode selectedFormDataType = dataType;
-          return createFormPropertyDescriptors(selectedFormDataType);
-        }
-      }
-    }
-    return Collections.emptyList();
+  private SchemaCache getSchemaCache(SimpleConfiguration connectedSystemConfiguration) {
+    String schemaLocation = connectedSystemConfiguration.getValue(
+        DynamicDataStructureConnectedSystemTemplate.SCHEMA_LOCATION_KEY);
+    return SchemaCache.forLocation(schemaLocation, this::parsePropertyDescriptorType);
+  }
+
+  private static int getSchemaTtlSeconds(SimpleConfiguration connectedSystemConfiguration) {
+    Integer ttlSeconds = connectedSystemConfiguration.getValue(
+        DynamicDataStructureConnectedSystemTemplate.SCHEMA_TTL_KEY);
+    return ttlSeconds == null ? SchemaCache.DEFAULT_TTL_SECONDS : ttlSeconds;
   }
 
   /**
-   * The json object contains the available data types and their structures.
-   * JsonNode is an object that represents the data structures in the JSON file
+   * The choices hold the names of the available data types
    */
-  private TextPropertyDescriptor createFormDropdown(JsonNode dataTypes) {
-    Choice[] dataTypeChoices = createDataTypeChoices(dataTypes);
-    return dropdownProperty(FORM_DROPDOWN_KEY, Arrays.asList(dataTypeChoices))
+  private TextPropertyDescriptor createFormDropdown(List<Choice> dataTypeChoices) {
+    return dropdownProperty(FORM_DROPDOWN_KEY, dataTypeChoices)
         .label(FORMS_DROPDOWN_LABEL)
         .instructionText(FormDropdownInstructionText)
         //Important: This triggers the Integration Template to re-render when the choice selection changes
@@ -159,50 +286,39 @@ public class DynamicDataStructureIntegrationTemplate extends SimpleIntegrationTe
         .build();
   }
 
-  private Choice[] createDataTypeChoices(JsonNode dataTypesAsJson) {
-    List<String> dataTypeNames = new ArrayList<>();
-    for (JsonNode dataType : dataTypesAsJson) {
-      String name = dataType.get(NAME_KEY).asText();
-      dataTypeNames.add(name);
+  private PropertyDescriptorBuilder parsePropertyDescriptorType(SUPPORTED_PROPERTY_TYPE type) {
+    switch (type) {
+      case TEXT:
+        return textProperty("");
+      case INTEGER:
+        return integerProperty("");
+      case BOOLEAN:
+        return booleanProperty("");
+      //The SDK has no decimal or date properties, so these are entered as text and checked on execute
+      case DECIMAL:
+        return textProperty("").instructionText("A decimal number, such as 1234.56");
+      case DOUBLE:
+        return textProperty("").instructionText("A number, such as 1.5E3");
+      case DATE:
+        return textProperty("").instructionText("A date, such as 2024-01-31");
+      case DATETIME:
+        return textProperty("").instructionText("A date and time with its offset, such as 2024-01-31T09:30:00Z");
+      default:
+        return listTypeProperty("").itemType(getListItemType(type.getItemType()));
     }
-    return dataTypeNames.stream()
-        .map(dataTypeName -> Choice
-            .builder()
-            .name(dataTypeName)
-            .value(dataTypeName)
-            .build()).toArray(Choice[]::new);
   }
 
-  private List<PropertyDescriptor> createFormPropertyDescriptors(JsonNode formDataType) {
-    JsonNode properties = formDataType.get(FIELDS_KEY);
-    List<PropertyDescriptor> propList = new ArrayList<>();
-    for (JsonNode prop : properties) {
-      String key = prop.get(ID_KEY).asText();
-      String label = prop.get(LABEL_KEY).asText();
-      String type = prop.get(TYPE_KEY).asText();
-      PropertyDescriptorBuilder propertyDescriptorBuilder = parsePropertyDescriptorType(type);
-      PropertyDescriptor propertyDescriptor = createPropertyDescriptor(key, label, propertyDescriptorBuilder);
-      propList.add(propertyDescriptor);
+  private static SystemType getListItemType(SUPPORTED_PROPERTY_TYPE itemType) {
+    switch (itemType) {
+      case INTEGER:
+        return SystemType.INTEGER;
+      case BOOLEAN:
+        return SystemType.BOOLEAN;
+      case DOUBLE:
+        return SystemType.DOUBLE;
+      default:
+        //Text, and decimals and dates which are entered as text
+        return SystemType.STRING;
     }
-    return propList;
-  }
-
-  private PropertyDescriptorBuilder parsePropertyDescriptorType(String type) {
-    if (SUPPORTED_PROPERTY_TYPE.TEXT.name().equals(type)) {
-      return textProperty("");
-    } else if (SUPPORTED_PROPERTY_TYPE.INTEGER.name().equals(type)) {
-      return integerProperty("");
-    } else if (SUPPORTED_PROPERTY_TYPE.BOOLEAN.name().equals(type)) {
-      return booleanProperty("");
-    } else {
-      throw new RuntimeException("Unsupported Property Type");
-    }
-  }
-
-  private PropertyDescriptor createPropertyDescriptor(String key, String label, PropertyDescriptorBuilder builder) {
-    return builder
-        .key(key)
-        .label(label)
-        .build();
   }
 }
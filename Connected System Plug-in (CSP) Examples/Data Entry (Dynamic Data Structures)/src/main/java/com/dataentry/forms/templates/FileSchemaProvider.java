@@ -0,0 +1,57 @@
+package com.dataentry.forms.templates;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Reads the schema from the example file bundled with this plug-in.
+ *
+ * The whole schema is in the one file, which is streamed for each load so that only the form names, or the
+ * fields of the selected form, are kept. Files elsewhere on the Appian server are not supported, so that a
+ * schema location cannot be used to read them.
+ */
+final class FileSchemaProvider implements SchemaProvider {
+
+  //The json file needs to be in the resources directory in order to be read properly
+  private static final String BUNDLED_SCHEMA = "com/dataentry/forms/templates/ExternalDataTypes.json";
+  //The bundled file only changes with the plug-in, which reloads every class
+  private static final String BUNDLED_VERSION = "bundled";
+
+  private FileSchemaProvider() {
+  }
+
+  static FileSchemaProvider bundled() {
+    return new FileSchemaProvider();
+  }
+
+  @Override
+  public Versioned<List<String>> loadCatalog(String previousVersion) throws IOException {
+    if (BUNDLED_VERSION.equals(previousVersion)) {
+      return null;
+    }
+    try (InputStream input = open()) {
+      return new Versioned<>(SchemaJson.readCatalog(input), BUNDLED_VERSION);
+    }
+  }
+
+  @Override
+  public Versioned<JsonNode> loadFields(String formName, String previousVersion) throws IOException {
+    if (BUNDLED_VERSION.equals(previousVersion)) {
+      return null;
+    }
+    try (InputStream input = open()) {
+      return new Versioned<>(SchemaJson.readFields(input, formName), BUNDLED_VERSION);
+    }
+  }
+
+  private static InputStream open() throws IOException {
+    InputStream input = FileSchemaProvider.class.getClassLoader().getResourceAsStream(BUNDLED_SCHEMA);
+    if (input == null) {
+      throw new IOException(BUNDLED_SCHEMA + " is missing from the plug-in");
+    }
+    return input;
+  }
+}
@@ -0,0 +1,241 @@
+package com.dataentry.forms.templates;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.appian.connectedsystems.templateframework.sdk.configuration.PropertyDescriptor;
+import com.dataentry.forms.templates.DynamicDataStructureIntegrationTemplate.SUPPORTED_PROPERTY_TYPE;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * One form of the external system: the properties the designer fills in, and the type of each field.
+ *
+ * What a type means for a value is looked up in tables indexed by the type, built once for all forms, so
+ * checking a record or converting a value never compares type names.
+ */
+final class FormSchema {
+
+  /**
+   * Checks a field value of a bulk record, returning why it is not valid or null if it is. Fields are
+   * optional, so null values are always valid.
+   */
+  interface FieldValidator {
+    String validate(JsonNode value);
+  }
+
+  /**
+   * Turns a value entered in the designer into the value sent to the external system, throwing
+   * IllegalArgumentException if it is not a valid value of the type
+   */
+  interface FieldConverter {
+    Object convert(Object value);
+  }
+
+  private static final Map<SUPPORTED_PROPERTY_TYPE,FieldValidator> VALIDATORS =
+      new EnumMap<>(SUPPORTED_PROPERTY_TYPE.class);
+  private static final Map<SUPPORTED_PROPERTY_TYPE,FieldConverter> CONVERTERS =
+      new EnumMap<>(SUPPORTED_PROPERTY_TYPE.class);
+  private static final FieldConverter AS_ENTERED = value -> value;
+
+  static {
+    VALIDATORS.put(SUPPORTED_PROPERTY_TYPE.TEXT, value ->
+        value.isNull() || value.isTextual() ? null : "expected text");
+    VALIDATORS.put(SUPPORTED_PROPERTY_TYPE.INTEGER, value ->
+        value.isNull() || value.isIntegralNumber() && value.canConvertToInt() ? null : "expected an integer");
+    VALIDATORS.put(SUPPORTED_PROPERTY_TYPE.BOOLEAN, value ->
+        value.isNull() || value.isBoolean() ? null : "expected true or false");
+    //Decimals may also be sent as text, which keeps digits a JSON number could lose
+    VALIDATORS.put(SUPPORTED_PROPERTY_TYPE.DECIMAL, value ->
+        value.isNull() || value.isNumber() || value.isTextual() && isDecimal(value.textValue()) ?
+            null : "expected a decimal number");
+    VALIDATORS.put(SUPPORTED_PROPERTY_TYPE.DOUBLE, value ->
+        value.isNull() || value.isNumber() ? null : "expected a number");
+    VALIDATORS.put(SUPPORTED_PROPERTY_TYPE.DATE, value ->
+        value.isNull() || value.isTextual() && isDate(value.textValue()) ? null : "expected a date such as 2024-01-31");
+    VALIDATORS.put(SUPPORTED_PROPERTY_TYPE.DATETIME, value ->
+        value.isNull() || value.isTextual() && isDateTime(value.textValue()) ?
+            null : "expected a date and time such as 2024-01-31T09:30:00Z");
+
+    //Text, integer and boolean properties already hold values of their type
+    CONVERTERS.put(SUPPORTED_PROPERTY_TYPE.TEXT, AS_ENTERED);
+    CONVERTERS.put(SUPPORTED_PROPERTY_TYPE.INTEGER, AS_ENTERED);
+    CONVERTERS.put(SUPPORTED_PROPERTY_TYPE.BOOLEAN, AS_ENTERED);
+    //The others are entered as text. Decimals and dates are sent as their canonical text so that no digits
+    // or offsets are lost on the way to the external system
+    CONVERTERS.put(SUPPORTED_PROPERTY_TYPE.DECIMAL, value ->
+        value == null ? null : parseDecimal(value.toString()).toPlainString());
+    CONVERTERS.put(SUPPORTED_PROPERTY_TYPE.DOUBLE, value ->
+        value == null || value instanceof Double ? value : parseDouble(value.toString()));
+    CONVERTERS.put(SUPPORTED_PROPERTY_TYPE.DATE, value ->
+        value == null ? null : parseDate(value.toString()).toString());
+    CONVERTERS.put(SUPPORTED_PROPERTY_TYPE.DATETIME, value ->
+        value == null ? null : DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(parseDateTime(value.toString())));
+
+    for (SUPPORTED_PROPERTY_TYPE type : SUPPORTED_PROPERTY_TYPE.values()) {
+      if (type.getItemType() != null) {
+        VALIDATORS.put(type, listValidator(VALIDATORS.get(type.getItemType())));
+        CONVERTERS.put(type, listConverter(CONVERTERS.get(type.getItemType())));
+      }
+    }
+  }
+
+  private final PropertyDescriptor[] properties;
+  private final Map<String,SUPPORTED_PROPERTY_TYPE> fieldTypes;
+
+  FormSchema(PropertyDescriptor[] properties, Map<String,SUPPORTED_PROPERTY_TYPE> fieldTypes) {
+    this.properties = properties;
+    this.fieldTypes = fieldTypes;
+  }
+
+  static FormSchema empty() {
+    return new FormSchema(new PropertyDescriptor[0], Collections.emptyMap());
+  }
+
+  /**
+   * The properties of the form. The array is shared, so callers copy it rather than change it.
+   */
+  PropertyDescriptor[] getProperties() {
+    return properties;
+  }
+
+  /**
+   * Returns why the record does not fit this form, or null if it does
+   */
+  String validate(JsonNode record) {
+    if (!record.isObject()) {
+      return "The record is not an object";
+    }
+    Iterator<Map.Entry<String,JsonNode>> fields = record.fields();
+    while (fields.hasNext()) {
+      Map.Entry<String,JsonNode> field = fields.next();
+      SUPPORTED_PROPERTY_TYPE type = fieldTypes.get(field.getKey());
+      if (type == null) {
+        return "The form has no field " + field.getKey();
+      }
+      String error = VALIDATORS.get(type).validate(field.getValue());
+      if (error != null) {
+        return field.getKey() + ": " + error;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Converts the value of a property for the external system. Properties that are not fields of the form,
+   * such as the form dropdown, are returned as they are.
+   */
+  Object convert(String key, Object value) {
+    SUPPORTED_PROPERTY_TYPE type = fieldTypes.get(key);
+    if (type == null) {
+      return value;
+    }
+    try {
+      return CONVERTERS.get(type).convert(value);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(key + ": " + e.getMessage(), e);
+    }
+  }
+
+  private static FieldValidator listValidator(FieldValidator itemValidator) {
+    return value -> {
+      if (value.isNull()) {
+        return null;
+      }
+      if (!value.isArray()) {
+        return "expected a list";
+      }
+      for (JsonNode item : value) {
+        String error = itemValidator.validate(item);
+        if (error != null) {
+          return error + " in the list";
+        }
+      }
+      return null;
+    };
+  }
+
+  private static FieldConverter listConverter(FieldConverter itemConverter) {
+    if (itemConverter == AS_ENTERED) {
+      return AS_ENTERED;
+    }
+    return value -> {
+      if (!(value instanceof List)) {
+        return value;
+      }
+      List<?> items = (List<?>)value;
+      List<Object> converted = new ArrayList<>(items.size());
+      for (Object item : items) {
+        converted.add(itemConverter.convert(item));
+      }
+      return converted;
+    };
+  }
+
+  private static boolean isDecimal(String text) {
+    try {
+      parseDecimal(text);
+      return true;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  private static boolean isDate(String text) {
+    try {
+      parseDate(text);
+      return true;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  private static boolean isDateTime(String text) {
+    try {
+      parseDateTime(text);
+      return true;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  private static BigDecimal parseDecimal(String text) {
+    try {
+      return new BigDecimal(text.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("expected a decimal number but was " + text);
+    }
+  }
+
+  private static double parseDouble(String text) {
+    try {
+      return Double.parseDouble(text.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("expected a number but was " + text);
+    }
+  }
+
+  private static LocalDate parseDate(String text) {
+    try {
+      return LocalDate.parse(text.trim());
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("expected a date such as 2024-01-31 but was " + text);
+    }
+  }
+
+  private static OffsetDateTime parseDateTime(String text) {
+    try {
+      return OffsetDateTime.parse(text.trim());
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("expected a date and time such as 2024-01-31T09:30:00Z but was " + text);
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package com.dataentry.forms.templates;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Fetches the schema from the external system over HTTP. The catalog is the array of forms at the schema
+ * URL, and the fields of a form are at the schema URL followed by a slash and the form name, for example
+ * https://example.com/schemas/account for the account form of https://example.com/schemas. Records of a
+ * form are sent to the form URL followed by /records.
+ *
+ * The ETag of the last response is sent back in If-None-Match, so a schema that has not changed costs the
+ * external system a 304 rather than the whole document, and is not parsed again here.
+ */
+final class HttpSchemaProvider implements SchemaProvider {
+
+  private static final int CONNECT_TIMEOUT_MS = 5_000;
+  private static final int SOCKET_TIMEOUT_MS = 30_000;
+
+  //Schemas are only fetched when they expire, so a handful of connections is plenty for every location
+  private static final CloseableHttpClient CLIENT = HttpClients.custom()
+      .setDefaultRequestConfig(RequestConfig.custom()
+          .setConnectTimeout(CONNECT_TIMEOUT_MS)
+          .setConnectionRequestTimeout(CONNECT_TIMEOUT_MS)
+          .setSocketTimeout(SOCKET_TIMEOUT_MS)
+          .build())
+      .setMaxConnTotal(10)
+      .setMaxConnPerRoute(2)
+      .evictIdleConnections(30, TimeUnit.SECONDS)
+      .build();
+
+  private final String url;
+
+  HttpSchemaProvider(String url) {
+    this.url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+  }
+
+  @Override
+  public Versioned<List<String>> loadCatalog(String previousVersion) throws IOException {
+    Versioned<List<String>> catalog = load(url, previousVersion, SchemaJson::readCatalog);
+    //A missing form only means the form has no fields, but without a catalog there are no forms at all
+    if (catalog != null && catalog.getValue() == null) {
+      throw new IOException("There is no schema catalog at " + url);
+    }
+    return catalog;
+  }
+
+  @Override
+  public Versioned<JsonNode> loadFields(String formName, String previousVersion) throws IOException {
+    return load(getFormUrl(formName), previousVersion, input -> SchemaJson.readFields(input, formName));
+  }
+
+  /**
+   * Returns the URL of a form, where its fields are read from
+   */
+  String getFormUrl(String formName) {
+    try {
+      return url + "/" + URLEncoder.encode(formName, "UTF-8").replace("+", "%20");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static <T> Versioned<T> load(String url, String previousVersion, DocumentReader<T> reader)
+      throws IOException {
+    HttpGet get = new HttpGet(url);
+    get.setHeader(HttpHeaders.ACCEPT, "application/json");
+    if (previousVersion != null) {
+      get.setHeader(HttpHeaders.IF_NONE_MATCH, previousVersion);
+    }
+
+    try (CloseableHttpResponse response = CLIENT.execute(get)) {
+      HttpEntity entity = response.getEntity();
+      try {
+        int statusCode = response.getStatusLine().getStatusCode();
+        if (statusCode == HttpStatus.SC_NOT_MODIFIED && previousVersion != null) {
+          return null;
+        }
+        if (statusCode == HttpStatus.SC_NOT_FOUND) {
+          return new Versioned<>(null, null);
+        }
+        if (statusCode != HttpStatus.SC_OK || entity == null) {
+          throw new IOException("Could not load the schema from " + url + ", status code " + statusCode);
+        }
+        Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+        try (InputStream content = entity.getContent()) {
+          return new Versioned<>(reader.read(content), etag == null ? null : etag.getValue());
+        }
+      } finally {
+        //Reads whatever is left so the connection can be reused
+        EntityUtils.consumeQuietly(entity);
+      }
+    }
+  }
+
+  private interface DocumentReader<T> {
+    T read(InputStream input) throws IOException;
+  }
+}
@@ -0,0 +1,90 @@
+package com.dataentry.forms.templates;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A batch of records sent to the external system, either as newline delimited JSON or as a JSON array.
+ *
+ * The records are encoded as they are written to the connection, so the batch is never held as one String.
+ * The body can be written more than once, so it can also be measured before or without being sent.
+ */
+final class RecordBatchEntity extends AbstractHttpEntity {
+
+  enum Format {
+    NDJSON("application/x-ndjson"),
+    JSON_ARRAY("application/json");
+
+    private final String contentType;
+
+    Format(String contentType) {
+      this.contentType = contentType;
+    }
+  }
+
+  //Created by an ObjectMapper so that generators can write JsonNode records
+  private static final JsonFactory JSON_FACTORY = new ObjectMapper().getFactory()
+      .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+  private final List<JsonNode> records;
+  private final Format format;
+
+  RecordBatchEntity(List<JsonNode> records, Format format) {
+    this.records = records;
+    this.format = format;
+    setContentType(format.contentType);
+  }
+
+  @Override
+  public void writeTo(OutputStream outputStream) throws IOException {
+    try (JsonGenerator generator = JSON_FACTORY.createGenerator(outputStream)) {
+      if (format == Format.NDJSON) {
+        generator.setRootValueSeparator(null);
+        for (JsonNode record : records) {
+          generator.writeTree(record);
+          generator.writeRaw('\n');
+        }
+      } else {
+        generator.writeStartArray();
+        for (JsonNode record : records) {
+          generator.writeTree(record);
+        }
+        generator.writeEndArray();
+      }
+    }
+  }
+
+  //Only used by callers that want the body as a stream, batches are sent through writeTo
+  @Override
+  public InputStream getContent() throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    writeTo(buffer);
+    return new ByteArrayInputStream(buffer.toByteArray());
+  }
+
+  @Override
+  public long getContentLength() {
+    return -1;
+  }
+
+  @Override
+  public boolean isRepeatable() {
+    return true;
+  }
+
+  @Override
+  public boolean isStreaming() {
+    return false;
+  }
+}
@@ -0,0 +1,122 @@
+package com.dataentry.forms.templates;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A value from the external system that configuration refreshes can read without waiting on it.
+ *
+ * Only the very first load blocks. Once the value is older than the TTL, the next read still gets it
+ * straight away while it is checked for changes in the background; the new value replaces the old one when
+ * it is ready. However many reads need a load at the same time, the loader is only called once.
+ */
+final class RefreshingValue<T> {
+
+  //Daemon threads so that an idle refresher never keeps the JVM alive
+  private static final ExecutorService REFRESHER = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "schema-refresh");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private static final Logger LOG = LoggerFactory.getLogger(RefreshingValue.class);
+
+  interface Loader<T> {
+    /**
+     * Loads the value, or returns null if it has not changed since the given version
+     */
+    SchemaProvider.Versioned<T> load(String previousVersion) throws Exception;
+  }
+
+  private final String description;
+  private final Loader<T> loader;
+  private volatile Entry<T> entry;
+  //The load in progress, shared by every read that needs it
+  private final AtomicReference<CompletableFuture<Entry<T>>> loading = new AtomicReference<>();
+
+  /**
+   * The description names the value in error messages, for example "the catalog of https://example.com"
+   */
+  RefreshingValue(String description, Loader<T> loader) {
+    this.description = description;
+    this.loader = loader;
+  }
+
+  /**
+   * Returns the value, loading it if it has never been loaded and otherwise starting a background refresh
+   * if it was last checked more than ttlSeconds ago.
+   */
+  T get(int ttlSeconds) {
+    Entry<T> current = entry;
+    if (current == null) {
+      try {
+        return load().join().value;
+      } catch (CompletionException e) {
+        Throwable cause = e.getCause();
+        throw new RuntimeException("Could not load " + description + ": " + cause.getMessage(), cause);
+      }
+    }
+    if (System.currentTimeMillis() - current.checkedAt >= ttlSeconds * 1000L) {
+      load();
+    }
+    return current.value;
+  }
+
+  private CompletableFuture<Entry<T>> load() {
+    while (true) {
+      CompletableFuture<Entry<T>> inProgress = loading.get();
+      if (inProgress != null) {
+        return inProgress;
+      }
+      CompletableFuture<Entry<T>> started = new CompletableFuture<>();
+      if (loading.compareAndSet(null, started)) {
+        REFRESHER.execute(() -> refresh(started));
+        return started;
+      }
+    }
+  }
+
+  private void refresh(CompletableFuture<Entry<T>> result) {
+    Entry<T> previous = entry;
+    try {
+      SchemaProvider.Versioned<T> loaded = loader.load(previous == null ? null : previous.version);
+      Entry<T> next = loaded == null ? previous.checked() : new Entry<>(loaded.getValue(), loaded.getVersion());
+      entry = next;
+      result.complete(next);
+    } catch (Throwable e) {
+      //Errors too, as the first read waits on this load and would otherwise never return
+      if (previous == null) {
+        result.completeExceptionally(e);
+      } else {
+        //Designers keep the value they have, and the external system is not asked again before another TTL
+        LOG.warn("Could not refresh {}, keeping the previous one", description, e);
+        entry = previous.checked();
+        result.complete(entry);
+      }
+    } finally {
+      loading.set(null);
+    }
+  }
+
+  private static final class Entry<T> {
+    private final T value;
+    private final String version;
+    private final long checkedAt;
+
+    private Entry(T value, String version) {
+      this.value = value;
+      this.version = version;
+      this.checkedAt = System.currentTimeMillis();
+    }
+
+    private Entry<T> checked() {
+      return new Entry<>(value, version);
+    }
+  }
+}
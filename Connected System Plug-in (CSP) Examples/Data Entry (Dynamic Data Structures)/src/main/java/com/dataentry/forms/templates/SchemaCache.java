@@ -0,0 +1,237 @@
+package com.dataentry.forms.templates;
+
+import static com.dataentry.forms.templates.DynamicDataStructureIntegrationTemplate.ID_KEY;
+import static com.dataentry.forms.templates.DynamicDataStructureIntegrationTemplate.LABEL_KEY;
+import static com.dataentry.forms.templates.DynamicDataStructureIntegrationTemplate.TYPE_KEY;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import com.appian.connectedsystems.templateframework.sdk.configuration.Choice;
+import com.appian.connectedsystems.templateframework.sdk.configuration.PropertyDescriptor;
+import com.appian.connectedsystems.templateframework.sdk.configuration.PropertyDescriptorBuilder;
+import com.dataentry.forms.templates.DynamicDataStructureIntegrationTemplate.SUPPORTED_PROPERTY_TYPE;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Keeps what has been loaded from each schema location, so that configuration refreshes do not wait on the
+ * external system: the catalog of form names, and the forms that have been selected.
+ *
+ * Both are {@link RefreshingValue}s, so they are checked for changes in the background once they are older
+ * than the TTL. The forms are bounded by their total number of fields, least recently selected forms going
+ * first, and are only softly held so the collector can drop them when memory runs short. A dropped form is
+ * simply loaded again the next time it is selected. Only the most recently used locations are kept.
+ */
+final class SchemaCache {
+
+  static final int DEFAULT_TTL_SECONDS = 300;
+
+  //Fields kept per location, a few hundred bytes each once turned into properties
+  private static final int MAX_CACHED_FIELDS = 50_000;
+
+  private static final PropertyDescriptor[] NO_PROPERTIES = new PropertyDescriptor[0];
+  private static final FormSchema NO_FIELDS = FormSchema.empty();
+
+  //Locations kept, each with its own forms, before the least recently used one is dropped
+  private static final int MAX_CACHED_LOCATIONS = 64;
+
+  //Least recently used first. Guarded by itself
+  private static final Map<String,SchemaCache> CACHES = new LinkedHashMap<String,SchemaCache>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String,SchemaCache> eldest) {
+      return size() > MAX_CACHED_LOCATIONS;
+    }
+  };
+
+  private final String location;
+  private final SchemaProvider provider;
+  private final Function<SUPPORTED_PROPERTY_TYPE,PropertyDescriptorBuilder> propertyBuilders;
+  private final RefreshingValue<Catalog> catalog;
+
+  //Least recently selected first. Guarded by itself, along with cachedFields and clearedForms
+  private final LinkedHashMap<String,FormReference> forms = new LinkedHashMap<>(16, 0.75f, true);
+  private final ReferenceQueue<RefreshingValue<FormSchema>> clearedForms = new ReferenceQueue<>();
+  private int cachedFields;
+
+  private SchemaCache(
+      String location,
+      SchemaProvider provider,
+      Function<SUPPORTED_PROPERTY_TYPE,PropertyDescriptorBuilder> propertyBuilders) {
+    this.location = location.isEmpty() ? "the bundled example" : location;
+    this.provider = provider;
+    this.propertyBuilders = propertyBuilders;
+    this.catalog = new RefreshingValue<>("the schema catalog of " + this.location, previousVersion -> {
+      SchemaProvider.Versioned<List<String>> names = provider.loadCatalog(previousVersion);
+      return names == null ? null : new SchemaProvider.Versioned<>(new Catalog(names.getValue()), names.getVersion());
+    });
+  }
+
+  /**
+   * Returns the cache for a schema location: an http or https URL, or blank for the example schema bundled
+   * with the plug-in. Throws IllegalArgumentException for any other location. The builder for each field
+   * comes from propertyBuilders, which is given the field's type.
+   */
+  static SchemaCache forLocation(
+      String location, Function<SUPPORTED_PROPERTY_TYPE,PropertyDescriptorBuilder> propertyBuilders) {
+    String key = location == null ? "" : location.trim();
+    synchronized (CACHES) {
+      return CACHES.computeIfAbsent(key, k -> new SchemaCache(k, createProvider(k), propertyBuilders));
+    }
+  }
+
+  private static SchemaProvider createProvider(String location) {
+    if (location.isEmpty()) {
+      return FileSchemaProvider.bundled();
+    }
+    String scheme = location.toLowerCase(Locale.ROOT);
+    if (scheme.startsWith("http://") || scheme.startsWith("https://")) {
+      return new HttpSchemaProvider(location);
+    }
+    throw new IllegalArgumentException("The schema location must be an http or https URL, or left blank for " +
+        "the bundled example");
+  }
+
+  List<Choice> getChoices(int ttlSeconds) {
+    return catalog.get(ttlSeconds).choices;
+  }
+
+  /**
+   * The properties of the selected form, none if no form is selected or the form is no longer in the
+   * catalog. The array is shared, so callers copy it rather than change it.
+   */
+  PropertyDescriptor[] getFormProperties(String formName, int ttlSeconds) {
+    FormSchema formSchema = getFormSchema(formName, ttlSeconds);
+    return formSchema == null ? NO_PROPERTIES : formSchema.getProperties();
+  }
+
+  /**
+   * The selected form, or null if no form is selected or the form is no longer in the catalog
+   */
+  FormSchema getFormSchema(String formName, int ttlSeconds) {
+    if (formName == null || !catalog.get(ttlSeconds).names.contains(formName)) {
+      return null;
+    }
+    RefreshingValue<FormSchema> form = getForm(formName);
+    FormSchema formSchema = form.get(ttlSeconds);
+    recordFields(formName, form, formSchema.getProperties().length);
+    return formSchema;
+  }
+
+  /**
+   * Where records of the form are sent, or null if the schema location is not an external system that
+   * accepts them
+   */
+  String getRecordsUrl(String formName) {
+    return provider instanceof HttpSchemaProvider ?
+        ((HttpSchemaProvider)provider).getFormUrl(formName) + "/records" : null;
+  }
+
+  private RefreshingValue<FormSchema> getForm(String formName) {
+    synchronized (forms) {
+      expungeClearedForms();
+      FormReference reference = forms.get(formName);
+      RefreshingValue<FormSchema> form = reference == null ? null : reference.get();
+      if (form == null) {
+        if (reference != null) {
+          remove(reference);
+        }
+        form = new RefreshingValue<>("form " + formName + " from " + location, previousVersion -> {
+          SchemaProvider.Versioned<JsonNode> fields = provider.loadFields(formName, previousVersion);
+          return fields == null ? null : new SchemaProvider.Versioned<>(
+              createFormSchema(fields.getValue()), fields.getVersion());
+        });
+        forms.put(formName, new FormReference(formName, form, clearedForms));
+      }
+      return form;
+    }
+  }
+
+  //Counts the fields of a form once they are known, then drops least recently selected forms beyond the limit
+  private void recordFields(String formName, RefreshingValue<FormSchema> form, int fieldCount) {
+    synchronized (forms) {
+      FormReference reference = forms.get(formName);
+      if (reference != null && reference.get() == form && reference.fieldCount != fieldCount) {
+        cachedFields += fieldCount - reference.fieldCount;
+        reference.fieldCount = fieldCount;
+      }
+      //The form just selected is the most recent one, and is kept even if it is over the limit on its own
+      Iterator<FormReference> leastRecentlySelected = forms.values().iterator();
+      while (cachedFields > MAX_CACHED_FIELDS && forms.size() > 1) {
+        cachedFields -= leastRecentlySelected.next().fieldCount;
+        leastRecentlySelected.remove();
+      }
+    }
+  }
+
+  private void expungeClearedForms() {
+    FormReference cleared;
+    while ((cleared = (FormReference)clearedForms.poll()) != null) {
+      remove(cleared);
+    }
+  }
+
+  private void remove(FormReference reference) {
+    //The form may have been evicted, or loaded again, since this reference was cleared
+    if (forms.get(reference.formName) == reference) {
+      forms.remove(reference.formName);
+      cachedFields -= reference.fieldCount;
+    }
+  }
+
+  private FormSchema createFormSchema(JsonNode fields) {
+    if (fields == null) {
+      return NO_FIELDS;
+    }
+    PropertyDescriptor[] properties = new PropertyDescriptor[fields.size()];
+    Map<String,SUPPORTED_PROPERTY_TYPE> fieldTypes = new HashMap<>();
+    int i = 0;
+    for (JsonNode field : fields) {
+      String key = field.get(ID_KEY).asText();
+      SUPPORTED_PROPERTY_TYPE type = SUPPORTED_PROPERTY_TYPE.parse(field.get(TYPE_KEY).asText());
+      properties[i++] = propertyBuilders.apply(type)
+          .key(key)
+          .label(field.get(LABEL_KEY).asText())
+          .build();
+      fieldTypes.put(key, type);
+    }
+    return new FormSchema(properties, fieldTypes);
+  }
+
+  private static final class Catalog {
+    private final List<Choice> choices;
+    private final Set<String> names;
+
+    private Catalog(List<String> formNames) {
+      List<Choice> choices = new ArrayList<>(formNames.size());
+      for (String name : formNames) {
+        choices.add(Choice.builder().name(name).value(name).build());
+      }
+      this.choices = Collections.unmodifiableList(choices);
+      this.names = new HashSet<>(formNames);
+    }
+  }
+
+  private static final class FormReference extends SoftReference<RefreshingValue<FormSchema>> {
+    private final String formName;
+    private int fieldCount;
+
+    private FormReference(
+        String formName,
+        RefreshingValue<FormSchema> form,
+        ReferenceQueue<RefreshingValue<FormSchema>> queue) {
+      super(form, queue);
+      this.formName = formName;
+    }
+  }
+}
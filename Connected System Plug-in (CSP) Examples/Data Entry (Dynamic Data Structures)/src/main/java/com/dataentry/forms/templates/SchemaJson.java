@@ -0,0 +1,106 @@
+package com.dataentry.forms.templates;
+
+import static com.dataentry.forms.templates.DynamicDataStructureIntegrationTemplate.FIELDS_KEY;
+import static com.dataentry.forms.templates.DynamicDataStructureIntegrationTemplate.NAME_KEY;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reads schema documents a token at a time, so that only the part that is needed is ever built: the form
+ * names for a catalog, or the fields of one form.
+ *
+ * A document is either an array of forms, like ExternalDataTypes.json, or a single form object.
+ */
+final class SchemaJson {
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  private SchemaJson() {
+  }
+
+  /**
+   * Reads the names of the forms in an array of forms, skipping over their fields
+   */
+  static List<String> readCatalog(InputStream input) throws IOException {
+    try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(input)) {
+      if (parser.nextToken() != JsonToken.START_ARRAY) {
+        throw new IOException("The schema catalog must be a JSON array of forms");
+      }
+      List<String> names = new ArrayList<>();
+      JsonToken token;
+      while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+        String name = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String key = parser.getCurrentName();
+          parser.nextToken();
+          if (NAME_KEY.equals(key)) {
+            name = parser.getValueAsString();
+          } else {
+            parser.skipChildren();
+          }
+        }
+        if (name != null) {
+          names.add(name);
+        }
+      }
+      if (token != JsonToken.END_ARRAY) {
+        throw new IOException("The schema catalog must only contain form objects");
+      }
+      return names;
+    }
+  }
+
+  /**
+   * Reads the fields of the named form, or null if the document has no such form. A document holding a
+   * single form is taken to be that form whatever its name.
+   */
+  static JsonNode readFields(InputStream input, String formName) throws IOException {
+    try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(input)) {
+      JsonToken token = parser.nextToken();
+      if (token == JsonToken.START_OBJECT) {
+        return readForm(parser, null);
+      }
+      if (token != JsonToken.START_ARRAY) {
+        throw new IOException("The schema must be a JSON array of forms or a single form");
+      }
+      while (parser.nextToken() == JsonToken.START_OBJECT) {
+        JsonNode fields = readForm(parser, formName);
+        if (fields != null) {
+          //When two forms share a name the first one is used
+          return fields;
+        }
+      }
+      return null;
+    }
+  }
+
+  //Reads one form object, returning its fields if it is the named form, or any form when formName is null
+  private static JsonNode readForm(JsonParser parser, String formName) throws IOException {
+    String name = null;
+    JsonNode fields = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String key = parser.getCurrentName();
+      parser.nextToken();
+      if (NAME_KEY.equals(key)) {
+        name = parser.getValueAsString();
+      } else if (FIELDS_KEY.equals(key) && (formName == null || name == null || formName.equals(name))) {
+        //The name may come after the fields, which are then read before knowing whether they are needed
+        fields = parser.readValueAsTree();
+      } else {
+        parser.skipChildren();
+      }
+    }
+    if (formName != null && !formName.equals(name)) {
+      return null;
+    }
+    return fields == null ? OBJECT_MAPPER.createArrayNode() : fields;
+  }
+}
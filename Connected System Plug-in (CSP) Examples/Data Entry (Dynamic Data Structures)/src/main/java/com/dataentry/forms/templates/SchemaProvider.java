@@ -0,0 +1,45 @@
+package com.dataentry.forms.templates;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Supplies the data structures of the external system in two levels: a catalog of form names for the form
+ * dropdown, and the fields of a single form once it is selected. External systems with thousands of forms
+ * never have to send all of them at once.
+ *
+ * Each load is given the version returned by the previous load of the same thing, or null if there is none;
+ * when nothing has changed since that version, null is returned instead of loading it again.
+ */
+interface SchemaProvider {
+
+  Versioned<List<String>> loadCatalog(String previousVersion) throws IOException;
+
+  /**
+   * Loads the JSON array of the form's fields. The value is null if the external system has no such form.
+   */
+  Versioned<JsonNode> loadFields(String formName, String previousVersion) throws IOException;
+
+  final class Versioned<T> {
+    private final T value;
+    private final String version;
+
+    Versioned(T value, String version) {
+      this.value = value;
+      this.version = version;
+    }
+
+    T getValue() {
+      return value;
+    }
+
+    /**
+     * Identifies this version of the value, or null if the provider cannot tell versions apart
+     */
+    String getVersion() {
+      return version;
+    }
+  }
+}
@@ -5,6 +5,10 @@ import static org.apache.http.impl.client.HttpClients.createDefault;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
@@ -14,9 +18,28 @@ import org.apache.http.impl.client.CloseableHttpClient;
 public class ErrorHandlingClient implements AutoCloseable {
   private static final String HTTPS_BASE_URL = "https://httpbin.org";
   private final CloseableHttpClient client;
+  private final ResilientRequestExecutor executor;
 
   public ErrorHandlingClient(){
+    this(createExecutor());
+  }
+
+  public ErrorHandlingClient(ResilientRequestExecutor executor){
     client = createDefault();
+    this.executor = executor;
+  }
+
+  /**
+   * Creates an executor for httpbin.org that returns the status codes offered by {@link HttpStatusCode} as they
+   * are. Those are the answers the user asked for, so retrying them or opening the circuit breaker over them
+   * would hide what the example demonstrates. Connection failures and the other retryable status codes are
+   * still retried.
+   */
+  public static ResilientRequestExecutor createExecutor() {
+    Set<Integer> retryableStatusCodes = new HashSet<>(ResilientRequestExecutor.DEFAULT_RETRYABLE_STATUS_CODES);
+    retryableStatusCodes.removeAll(
+        Arrays.stream(HttpStatusCode.values()).map(HttpStatusCode::getCode).collect(Collectors.toSet()));
+    return new ResilientRequestExecutor(retryableStatusCodes);
   }
 
   @Override
@@ -27,7 +50,7 @@ public class ErrorHandlingClient implements AutoCloseable {
   public CloseableHttpResponse execute(String statusCode) throws IOException, URISyntaxException {
     HttpGet getRequest = new HttpGet();
     getRequest.setURI(createURI(statusCode));
-    return client.execute(getRequest);
+    return executor.execute(client, getRequest);
   }
 
   public static URI createURI(String statusCode) throws URISyntaxException {
@@ -90,12 +90,15 @@ public class ErrorHandlingIntegrationTemplate extends SimpleIntegrationTemplate
     IntegrationDesignerDiagnostic.IntegrationDesignerDiagnosticBuilder diagnosticBuilder = IntegrationDesignerDiagnostic
         .builder();
 
-    try (ErrorHandlingClient errorClient = new ErrorHandlingClient()) {
+    //Created outside the client so that retries and breaker state can be reported when the call fails
+    ResilientRequestExecutor executor = ErrorHandlingClient.createExecutor();
+    try (ErrorHandlingClient errorClient = new ErrorHandlingClient(executor)) {
       requestDiagnosticsMap.put("URL", ErrorHandlingClient.createURI(statusCode));
       diagnosticBuilder.addRequestDiagnostic(requestDiagnosticsMap);
 
       CloseableHttpResponse response = errorClient.execute(statusCode);
       responseDiagnosticsMap.put("Response", response.toString());
+      responseDiagnosticsMap.putAll(executor.getDiagnostics());
       diagnosticBuilder.addResponseDiagnostic(responseDiagnosticsMap);
 
       //Handle Http Response Errors
@@ -116,6 +119,7 @@ public class ErrorHandlingIntegrationTemplate extends SimpleIntegrationTemplate
       integrationErrorBuilder.title("https://www.httpbin.org returns the following exception:");
       integrationErrorBuilder.message(e.getMessage());
       responseDiagnosticsMap.put("Error Response", e.toString());
+      responseDiagnosticsMap.putAll(executor.getDiagnostics());
       diagnosticBuilder.addResponseDiagnostic(responseDiagnosticsMap);
       return IntegrationResponse.forError(integrationErrorBuilder.build())
           .withDiagnostic(diagnosticBuilder.build())
@@ -0,0 +1,287 @@
+package com.example.errorhandling.templates;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.client.utils.HttpClientUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Sends HTTP requests with retries and a circuit breaker, so that a short burst of errors from the remote
+ * system does not turn into a burst of failed process instances, and a remote system that is down is not
+ * hammered with more requests.
+ *
+ * <ul>
+ *   <li>Responses are retried only when their status is one of the retryable status codes, by default
+ *   {@link #DEFAULT_RETRYABLE_STATUS_CODES}, and connection failures are always retried.</li>
+ *   <li>Retries wait with decorrelated jitter, or for as long as the Retry-After header asks if that is
+ *   longer, so that retries from many nodes do not line up.</li>
+ *   <li>Every endpoint has a retry budget: each request earns a fraction of a retry, so retries stay a small
+ *   share of the traffic while the endpoint keeps failing.</li>
+ *   <li>Every endpoint has a circuit breaker. After several consecutive failures, calls fail fast for a while
+ *   without being sent, then a single trial request decides whether the endpoint is healthy again.</li>
+ * </ul>
+ *
+ * A new executor is used for each execution; budgets and breakers are shared by all of them.
+ *
+ * The Error Handling, Google Locations and textDetection plug-ins are built separately, so each has its own
+ * copy of this class that only differs in its package. A fix made to one copy has to be made to the others.
+ */
+public class ResilientRequestExecutor {
+
+  /**
+   * Too many requests, and the server errors that usually pass once the server or the gateway in front of it
+   * has recovered
+   */
+  public static final Set<Integer> DEFAULT_RETRYABLE_STATUS_CODES =
+      Collections.unmodifiableSet(new HashSet<>(Arrays.asList(429, 500, 502, 503, 504)));
+
+  private static final int MAX_ATTEMPTS = 3;
+  private static final long BASE_DELAY_MS = 200;
+  private static final long MAX_DELAY_MS = 5_000;
+  //A Retry-After longer than this is not waited for, the response is returned to the caller instead
+  private static final long MAX_RETRY_AFTER_MS = 10_000;
+
+  private static final ConcurrentMap<String,Endpoint> ENDPOINTS = new ConcurrentHashMap<>();
+
+  private final Set<Integer> retryableStatusCodes;
+  private int attempts;
+  private int retries;
+  private CircuitBreaker.State breakerState = CircuitBreaker.State.CLOSED;
+
+  public ResilientRequestExecutor() {
+    this(DEFAULT_RETRYABLE_STATUS_CODES);
+  }
+
+  /**
+   * Creates an executor that retries responses with the given status codes. Responses with any other status
+   * are returned as they are and count as successes for the circuit breaker.
+   */
+  public ResilientRequestExecutor(Set<Integer> retryableStatusCodes) {
+    this.retryableStatusCodes = retryableStatusCodes;
+  }
+
+  /**
+   * Runs before every attempt, retries included, and throws to stop the request from being sent. Used to
+   * take a permit from a rate limiter, so that retries count against the rate like any other call.
+   */
+  public interface AttemptGate {
+    void beforeAttempt() throws IOException;
+  }
+
+  /**
+   * Sends the request, retrying it when allowed. Returns the last response received, which the caller must
+   * consume or close as usual.
+   *
+   * @throws CircuitOpenException if the circuit breaker of the endpoint is open
+   */
+  public CloseableHttpResponse execute(CloseableHttpClient client, HttpUriRequest request) throws IOException {
+    return execute(client, request, () -> {
+    });
+  }
+
+  /**
+   * Same as {@link #execute(CloseableHttpClient, HttpUriRequest)}, but every attempt first passes the gate.
+   * An exception thrown by the gate is passed on to the caller without sending the attempt.
+   */
+  public CloseableHttpResponse execute(CloseableHttpClient client, HttpUriRequest request, AttemptGate gate)
+      throws IOException {
+    Endpoint endpoint = ENDPOINTS.computeIfAbsent(endpointKey(request.getURI()), key -> new Endpoint());
+    endpoint.retryBudget.deposit();
+    long previousDelay = BASE_DELAY_MS;
+    while (true) {
+      //Before the breaker, which lets a single trial request through once it has been asked
+      gate.beforeAttempt();
+      if (!endpoint.circuitBreaker.allowRequest()) {
+        breakerState = endpoint.circuitBreaker.getState();
+        throw new CircuitOpenException(request.getURI());
+      }
+      attempts++;
+      CloseableHttpResponse response;
+      try {
+        response = client.execute(request);
+      } catch (IOException e) {
+        endpoint.circuitBreaker.recordFailure();
+        breakerState = endpoint.circuitBreaker.getState();
+        if (!canRetry(endpoint)) {
+          throw e;
+        }
+        previousDelay = backOff(previousDelay, 0);
+        continue;
+      } catch (RuntimeException e) {
+        //Such as a client that was shut down. Recorded so that a trial request in HALF_OPEN is never left open
+        endpoint.circuitBreaker.recordFailure();
+        breakerState = endpoint.circuitBreaker.getState();
+        throw e;
+      }
+
+      int statusCode = response.getStatusLine().getStatusCode();
+      if (!retryableStatusCodes.contains(statusCode)) {
+        //Client errors such as 404 mean the endpoint is working, so they count as successes for the breaker
+        endpoint.circuitBreaker.recordSuccess();
+        breakerState = endpoint.circuitBreaker.getState();
+        return response;
+      }
+      endpoint.circuitBreaker.recordFailure();
+      breakerState = endpoint.circuitBreaker.getState();
+      long retryAfterMs = getRetryAfterMs(response);
+      if (retryAfterMs > MAX_RETRY_AFTER_MS || !canRetry(endpoint)) {
+        return response;
+      }
+      //Releases the connection before waiting
+      EntityUtils.consumeQuietly(response.getEntity());
+      HttpClientUtils.closeQuietly(response);
+      previousDelay = backOff(previousDelay, retryAfterMs);
+    }
+  }
+
+  public Map<String,Object> getDiagnostics() {
+    Map<String,Object> diagnostics = new HashMap<>();
+    diagnostics.put("Attempts", attempts);
+    diagnostics.put("Retries", retries);
+    diagnostics.put("Circuit Breaker", breakerState.name());
+    return diagnostics;
+  }
+
+  private boolean canRetry(Endpoint endpoint) {
+    if (attempts >= MAX_ATTEMPTS || endpoint.circuitBreaker.getState() != CircuitBreaker.State.CLOSED ||
+        !endpoint.retryBudget.tryWithdraw()) {
+      return false;
+    }
+    retries++;
+    return true;
+  }
+
+  //Decorrelated jitter: a random delay between the base delay and three times the previous one
+  private static long backOff(long previousDelay, long retryAfterMs) throws InterruptedIOException {
+    long jitter = ThreadLocalRandom.current().nextLong(BASE_DELAY_MS, Math.max(previousDelay * 3, BASE_DELAY_MS + 1));
+    long delay = Math.max(Math.min(MAX_DELAY_MS, jitter), retryAfterMs);
+    try {
+      TimeUnit.MILLISECONDS.sleep(delay);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to retry");
+    }
+    return delay;
+  }
+
+  //Retry-After is either a number of seconds or an HTTP date
+  private static long getRetryAfterMs(CloseableHttpResponse response) {
+    Header header = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+    if (header == null) {
+      return 0;
+    }
+    String value = header.getValue().trim();
+    try {
+      return TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+    } catch (NumberFormatException e) {
+      Date date = DateUtils.parseDate(value);
+      return date == null ? 0 : Math.max(0, date.getTime() - System.currentTimeMillis());
+    }
+  }
+
+  private static String endpointKey(URI uri) {
+    return uri.getScheme() + "://" + uri.getAuthority() + uri.getPath();
+  }
+
+  private static final class Endpoint {
+    private final RetryBudget retryBudget = new RetryBudget();
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+  }
+
+  private static final class RetryBudget {
+    //Each request earns a fifth of a retry, up to a small reserve for occasional errors
+    private static final double TOKENS_PER_REQUEST = 0.2;
+    private static final double MAX_TOKENS = 10;
+
+    private double tokens = MAX_TOKENS;
+
+    synchronized void deposit() {
+      tokens = Math.min(MAX_TOKENS, tokens + TOKENS_PER_REQUEST);
+    }
+
+    synchronized boolean tryWithdraw() {
+      if (tokens < 1) {
+        return false;
+      }
+      tokens--;
+      return true;
+    }
+  }
+
+  static final class CircuitBreaker {
+    enum State {
+      CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final int FAILURE_THRESHOLD = 5;
+    private static final long OPEN_DURATION_MS = 30_000;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    synchronized boolean allowRequest() {
+      if (state == State.OPEN && System.currentTimeMillis() - openedAt >= OPEN_DURATION_MS) {
+        state = State.HALF_OPEN;
+        trialInFlight = false;
+      }
+      if (state == State.HALF_OPEN) {
+        //Only one request is let through to find out whether the endpoint has recovered
+        if (trialInFlight) {
+          return false;
+        }
+        trialInFlight = true;
+        return true;
+      }
+      return state == State.CLOSED;
+    }
+
+    synchronized void recordSuccess() {
+      state = State.CLOSED;
+      consecutiveFailures = 0;
+      trialInFlight = false;
+    }
+
+    synchronized void recordFailure() {
+      consecutiveFailures++;
+      if (state == State.HALF_OPEN || consecutiveFailures >= FAILURE_THRESHOLD) {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        trialInFlight = false;
+      }
+    }
+
+    synchronized State getState() {
+      return state;
+    }
+  }
+
+  /**
+   * Thrown instead of sending a request while the endpoint's circuit breaker is open.
+   */
+  public static class CircuitOpenException extends IOException {
+    CircuitOpenException(URI uri) {
+      super("Not calling " + uri.getHost() + " because it has been failing, it will be tried again shortly");
+    }
+  }
+}
@@ -0,0 +1,241 @@
+package com.mycorp.googledrive.templates;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.googleapis.services.json.AbstractGoogleJsonClientRequest;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.services.drive.Drive;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs many Drive calls for a single integration execution and keeps an outcome for every item, so that one
+ * failed item does not abort the rest of the batch.
+ *
+ * Metadata calls are queued on Google's batch endpoint, which accepts up to {@link #MAX_BATCH_SIZE} calls
+ * per HTTP request. Calls that transfer content cannot be batched, so they run concurrently on a pool that
+ * is limited to the configured parallelism.
+ */
+public class DriveBatchRunner {
+
+  public static final int DEFAULT_PARALLELISM = 4;
+  //Each concurrent upload or download holds its own buffers, so the pool stays small
+  public static final int MAX_PARALLELISM = 8;
+  //Google rejects batch requests with more than 100 calls
+  private static final int MAX_BATCH_SIZE = 100;
+
+  private final Drive drive;
+  private final int parallelism;
+  private int batchRequestsSent;
+
+  public DriveBatchRunner(Drive drive, Integer parallelism) {
+    this.drive = drive;
+    this.parallelism = parallelism == null || parallelism <= 0 ?
+        DEFAULT_PARALLELISM :
+        Math.min(parallelism, MAX_PARALLELISM);
+  }
+
+  /**
+   * Sends the given metadata requests through the batch endpoint. Outcomes are returned in the same order as
+   * the requests.
+   */
+  public <T> List<ItemResult<T>> executeBatched(List<? extends AbstractGoogleJsonClientRequest<T>> requests) {
+    List<ItemResult<T>> results = new ArrayList<>(requests.size());
+    for (int i = 0; i < requests.size(); i++) {
+      results.add(null);
+    }
+    for (int start = 0; start < requests.size(); start += MAX_BATCH_SIZE) {
+      int end = Math.min(start + MAX_BATCH_SIZE, requests.size());
+      BatchRequest batch = drive.batch();
+      try {
+        for (int i = start; i < end; i++) {
+          int index = i;
+          requests.get(i).queue(batch, new JsonBatchCallback<T>() {
+            @Override
+            public void onSuccess(T value, HttpHeaders responseHeaders) {
+              results.set(index, ItemResult.success(value));
+            }
+
+            @Override
+            public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) {
+              results.set(index, ItemResult.failure(error.getCode(), error.getMessage()));
+            }
+          });
+        }
+        batchRequestsSent++;
+        batch.execute();
+      } catch (IOException e) {
+        //The batch request itself failed, so none of its calls have an outcome from Google
+        for (int i = start; i < end; i++) {
+          if (results.get(i) == null) {
+            results.set(i, ItemResult.failure(e));
+          }
+        }
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Runs the given call for every item, at most {@code parallelism} at a time. Outcomes are returned in the
+   * same order as the items.
+   */
+  public <I, T> List<ItemResult<T>> executeConcurrently(List<I> items, ItemCall<I,T> call) {
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(items.size(), 1)),
+        new ThreadFactoryBuilder().setNameFormat("drive-batch-%d").setDaemon(true).build());
+    try {
+      List<Future<ItemResult<T>>> futures = new ArrayList<>(items.size());
+      for (I item : items) {
+        futures.add(executor.submit(() -> {
+          try {
+            return ItemResult.success(call.call(item));
+          } catch (IOException | RuntimeException e) {
+            return ItemResult.<T>failure(e);
+          }
+        }));
+      }
+      List<ItemResult<T>> results = new ArrayList<>(items.size());
+      for (Future<ItemResult<T>> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while running batch", e);
+    } catch (ExecutionException e) {
+      //Items catch their own exceptions, so only errors can end up here
+      throw new RuntimeException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Returns true when every item was rejected because the access token is no longer valid, in which case
+   * the whole execution should be retried with a refreshed token.
+   */
+  public static boolean allUnauthorized(List<? extends ItemResult<?>> results) {
+    if (results.isEmpty()) {
+      return false;
+    }
+    for (ItemResult<?> result : results) {
+      if (result.isSuccess() || result.errorCode != 401) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public static <T> Map<String,Object> getResult(
+      List<ItemResult<T>> results,
+      Function<T,Map<String,Object>> toMap) {
+    List<Map<String,Object>> items = new ArrayList<>(results.size());
+    int failed = 0;
+    for (int i = 0; i < results.size(); i++) {
+      ItemResult<T> result = results.get(i);
+      Map<String,Object> item = result.isSuccess() ? toMap.apply(result.value) : new HashMap<>();
+      item.put("index", i + 1);
+      item.put("success", result.isSuccess());
+      if (!result.isSuccess()) {
+        failed++;
+        Map<String,Object> error = new HashMap<>();
+        error.put("code", result.errorCode);
+        error.put("message", result.errorMessage);
+        item.put("error", error);
+      }
+      items.add(item);
+    }
+    Map<String,Object> resultMap = new HashMap<>();
+    resultMap.put("items", items);
+    resultMap.put("succeeded", results.size() - failed);
+    resultMap.put("failed", failed);
+    return resultMap;
+  }
+
+  public Map<String,Object> getDiagnostics(List<? extends ItemResult<?>> results) {
+    int failed = 0;
+    for (ItemResult<?> result : results) {
+      if (!result.isSuccess()) {
+        failed++;
+      }
+    }
+    Map<String,Object> diagnostics = new HashMap<>();
+    diagnostics.put("Items", results.size());
+    diagnostics.put("Succeeded", results.size() - failed);
+    diagnostics.put("Failed", failed);
+    diagnostics.put("Batch Requests Sent", batchRequestsSent);
+    return diagnostics;
+  }
+
+  @FunctionalInterface
+  public interface ItemCall<I, T> {
+    T call(I item) throws IOException;
+  }
+
+  /**
+   * The outcome of one item: either the value returned by Google, or the error code and message.
+   */
+  public static final class ItemResult<T> {
+    private final boolean success;
+    private final T value;
+    private final int errorCode;
+    private final String errorMessage;
+
+    private ItemResult(boolean success, T value, int errorCode, String errorMessage) {
+      this.success = success;
+      this.value = value;
+      this.errorCode = errorCode;
+      this.errorMessage = errorMessage;
+    }
+
+    static <T> ItemResult<T> success(T value) {
+      return new ItemResult<>(true, value, 0, null);
+    }
+
+    static <T> ItemResult<T> failure(int errorCode, String errorMessage) {
+      return new ItemResult<>(false, null, errorCode, errorMessage);
+    }
+
+    static <T> ItemResult<T> failure(Exception e) {
+      if (e instanceof GoogleJsonResponseException) {
+        GoogleJsonResponseException responseException = (GoogleJsonResponseException)e;
+        GoogleJsonError details = responseException.getDetails();
+        return failure(responseException.getStatusCode(),
+            details != null ? details.getMessage() : responseException.getStatusMessage());
+      }
+      //Not an error returned by Google, such as a connection failure
+      return failure(0, e.toString());
+    }
+
+    /**
+     * Carries the error of a failed item over to a later step of the same item.
+     */
+    <U> ItemResult<U> asFailure() {
+      return new ItemResult<>(false, null, errorCode, errorMessage);
+    }
+
+    public boolean isSuccess() {
+      return success;
+    }
+
+    public T getValue() {
+      return value;
+    }
+  }
+}
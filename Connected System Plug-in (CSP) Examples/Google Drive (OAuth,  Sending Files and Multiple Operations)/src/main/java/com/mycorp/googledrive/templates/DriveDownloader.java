@@ -0,0 +1,180 @@
+package com.mycorp.googledrive.templates;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.appian.connectedsystems.templateframework.sdk.DocumentDownloadService;
+import com.appian.connectedsystems.templateframework.sdk.configuration.Document;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import com.google.common.base.Stopwatch;
+import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Downloads a Drive file into an Appian document.
+ *
+ * Drive returns metadata and content from separate calls, so the metadata request (limited to the fields
+ * that are shown to the designer) is sent on a background thread while the content request is opened on the
+ * calling thread. Both round trips overlap and the content is streamed straight into the document service
+ * without ever being held in memory as a whole.
+ */
+public class DriveDownloader {
+
+  static final String METADATA_FIELDS = "name, mimeType, description, size";
+  public static final int DEFAULT_SEGMENT_SIZE_MB = 8;
+  public static final int DEFAULT_PARALLELISM = 4;
+  //A download holds up to parallelism + 1 segments in memory
+  public static final int MAX_SEGMENT_SIZE_MB = 32;
+  public static final int MAX_PARALLELISM = 8;
+  //Size of the buffer between the socket and the document service
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  //Daemon threads so that an idle pool never keeps the JVM alive
+  private static final ExecutorService METADATA_FETCHERS = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setNameFormat("drive-metadata-fetcher-%d").setDaemon(true).build());
+
+  private final Drive drive;
+
+  public DriveDownloader(Drive drive) {
+    this.drive = drive;
+  }
+
+  public Download download(String fileId, Long folderId, DocumentDownloadService documentDownloadService)
+      throws IOException {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    Future<File> metadata = METADATA_FETCHERS.submit(
+        () -> drive.files().get(fileId).setFields(METADATA_FIELDS).execute());
+    try (CountingInputStream content = openContent(fileId)) {
+      File file = getMetadata(metadata);
+      Document document = documentDownloadService.downloadDocument(content, folderId, file.getName());
+      return new Download(file, document, content.getCount(), stopwatch.stop().elapsed(TimeUnit.MILLISECONDS));
+    } finally {
+      //Does nothing if the metadata already arrived, otherwise stops a request whose result is not needed
+      metadata.cancel(true);
+    }
+  }
+
+  /**
+   * Downloads the content of a file whose metadata has already been fetched, for example through a batch
+   * request.
+   */
+  public Download download(String fileId, File file, Long folderId, DocumentDownloadService documentDownloadService)
+      throws IOException {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    try (CountingInputStream content = openContent(fileId)) {
+      Document document = documentDownloadService.downloadDocument(content, folderId, file.getName());
+      return new Download(file, document, content.getCount(), stopwatch.stop().elapsed(TimeUnit.MILLISECONDS));
+    }
+  }
+
+  /**
+   * Downloads the file as byte ranges that are fetched concurrently, see {@link RangeDownloadInputStream}.
+   * Files that fit in a single segment are downloaded with one request as usual.
+   */
+  public Download downloadInRanges(
+      String fileId,
+      Long folderId,
+      DocumentDownloadService documentDownloadService,
+      Integer segmentSizeMb,
+      Integer parallelism) throws IOException {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    long segmentSize = Math.min(valueOrDefault(segmentSizeMb, DEFAULT_SEGMENT_SIZE_MB), MAX_SEGMENT_SIZE_MB) *
+        1024L * 1024L;
+    //The size is needed to split the file, so the metadata has to arrive before the content is requested
+    File file = drive.files().get(fileId).setFields(METADATA_FIELDS).execute();
+    if (file.getSize() == null || file.getSize() <= segmentSize) {
+      return download(fileId, file, folderId, documentDownloadService);
+    }
+    try (RangeDownloadInputStream ranges = new RangeDownloadInputStream(drive, fileId, file.getSize(),
+        (int)segmentSize, Math.min(valueOrDefault(parallelism, DEFAULT_PARALLELISM), MAX_PARALLELISM));
+         CountingInputStream content = new CountingInputStream(ranges)) {
+      Document document = documentDownloadService.downloadDocument(content, folderId, file.getName());
+      Download download = new Download(file, document, content.getCount(),
+          stopwatch.stop().elapsed(TimeUnit.MILLISECONDS));
+      download.transferDiagnostics.put("Segments", ranges.getSegmentsFetched());
+      download.transferDiagnostics.put("Segment Retries", ranges.getSegmentRetries());
+      return download;
+    }
+  }
+
+  private CountingInputStream openContent(String fileId) throws IOException {
+    return new CountingInputStream(
+        new BufferedInputStream(drive.files().get(fileId).executeMediaAsInputStream(), BUFFER_SIZE));
+  }
+
+  private static int valueOrDefault(Integer value, int defaultValue) {
+    return value == null || value <= 0 ? defaultValue : value;
+  }
+
+  private static File getMetadata(Future<File> metadata) throws IOException {
+    try {
+      return metadata.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for file metadata");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException)e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  /**
+   * The downloaded document along with the transfer statistics shown in the response diagnostics.
+   */
+  public static class Download {
+    private final File file;
+    private final Document document;
+    private final long bytes;
+    private final long elapsedMillis;
+    private final Map<String,Object> transferDiagnostics = new HashMap<>();
+
+    private Download(File file, Document document, long bytes, long elapsedMillis) {
+      this.file = file;
+      this.document = document;
+      this.bytes = bytes;
+      this.elapsedMillis = elapsedMillis;
+    }
+
+    public File getFile() {
+      return file;
+    }
+
+    public Document getDocument() {
+      return document;
+    }
+
+    public long getElapsedMillis() {
+      return elapsedMillis;
+    }
+
+    public Map<String,Object> getDiagnostics() {
+      Map<String,Object> diagnostics = new HashMap<>();
+      diagnostics.put("File Name", file.getName());
+      diagnostics.put("File Type", file.getMimeType());
+      diagnostics.put("File Description", file.getDescription());
+      diagnostics.put("Bytes Downloaded", bytes);
+      diagnostics.put("Throughput (MB/s)", getThroughputMbPerSecond());
+      diagnostics.putAll(transferDiagnostics);
+      return diagnostics;
+    }
+
+    private double getThroughputMbPerSecond() {
+      if (elapsedMillis == 0) {
+        return 0;
+      }
+      double megabytes = bytes / (1024.0 * 1024.0);
+      return Math.round(megabytes * 1000 / elapsedMillis * 100) / 100.0;
+    }
+  }
+}
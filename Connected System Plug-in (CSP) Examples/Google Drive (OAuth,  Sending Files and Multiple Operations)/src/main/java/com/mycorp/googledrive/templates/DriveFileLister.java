@@ -0,0 +1,171 @@
+package com.mycorp.googledrive.templates;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.FileList;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Lists the children of a Drive folder by following nextPageToken until every page has been read or one of
+ * the configured caps is reached.
+ *
+ * Only the id, name and MIME type of each file are requested from Google (using a fields projection), and
+ * each page is converted into small maps as soon as it arrives, so full {@link File} models are never
+ * accumulated in memory.
+ */
+public class DriveFileLister {
+
+  public static final int DEFAULT_PAGE_SIZE = 1000;
+  public static final int DEFAULT_MAX_ITEMS = 10_000;
+  public static final int DEFAULT_MAX_BYTES = 5 * 1024 * 1024;
+  //Google Drive does not return more than 1000 files per page
+  private static final int MAX_PAGE_SIZE = 1000;
+
+  private static final String LIST_FIELDS = "nextPageToken, files(id, name, mimeType)";
+
+  private final Drive drive;
+  private final int pageSize;
+  private final int maxItems;
+  private final long maxBytes;
+  private RateLimiter rateLimiter;
+
+  public DriveFileLister(Drive drive, Integer pageSize, Integer maxItems, Integer maxBytes) {
+    this.drive = drive;
+    this.pageSize = Math.min(valueOrDefault(pageSize, DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE);
+    this.maxItems = valueOrDefault(maxItems, DEFAULT_MAX_ITEMS);
+    this.maxBytes = valueOrDefault(maxBytes, DEFAULT_MAX_BYTES);
+  }
+
+  /**
+   * Makes every page request wait for a permit from the given limiter. Used when several listers share a
+   * request budget.
+   */
+  public DriveFileLister withRateLimiter(RateLimiter rateLimiter) {
+    this.rateLimiter = rateLimiter;
+    return this;
+  }
+
+  /**
+   * Reads every page of the children of the given folder into a {@link Result}. Stops early, and marks the
+   * result as truncated, once the item or byte cap is reached.
+   */
+  public Result list(String folderId) throws IOException {
+    Result result = new Result();
+    String pageToken = null;
+    do {
+      FileList page = fetchPage(folderId, pageToken);
+      result.pagesFetched++;
+      pageToken = page.getNextPageToken();
+      if (!result.addPage(page.getFiles(), pageToken != null)) {
+        break;
+      }
+    } while (pageToken != null);
+    return result;
+  }
+
+  private FileList fetchPage(String folderId, String pageToken) throws IOException {
+    if (rateLimiter != null) {
+      rateLimiter.acquire();
+    }
+    return drive.files()
+        .list()
+        .setQ("'" + folderId + "' in parents")
+        .setPageSize(pageSize)
+        .setFields(LIST_FIELDS)
+        .setPageToken(pageToken)
+        .execute();
+  }
+
+  private static int valueOrDefault(Integer value, int defaultValue) {
+    return value == null || value <= 0 ? defaultValue : value;
+  }
+
+  /**
+   * Compact aggregation of the listed files along with the counters shown in the response diagnostics.
+   */
+  public class Result {
+    private final List<Map<String,Object>> files = new ArrayList<>();
+    private int pagesFetched;
+    private long bytes;
+    private boolean truncated;
+
+    /**
+     * Adds the files of one page. Returns false when a cap was hit and no more pages should be fetched.
+     */
+    boolean addPage(List<File> page, boolean hasMorePages) {
+      if (page != null) {
+        for (File file : page) {
+          long fileBytes = utf8Length(file.getId()) + utf8Length(file.getName()) + utf8Length(file.getMimeType());
+          if (files.size() >= maxItems || bytes + fileBytes > maxBytes) {
+            truncated = true;
+            return false;
+          }
+          files.add(toMap(file));
+          bytes += fileBytes;
+        }
+      }
+      if (hasMorePages && files.size() >= maxItems) {
+        truncated = true;
+        return false;
+      }
+      return true;
+    }
+
+    public List<Map<String,Object>> getFiles() {
+      return files;
+    }
+
+    public int getPagesFetched() {
+      return pagesFetched;
+    }
+
+    public boolean isTruncated() {
+      return truncated;
+    }
+
+    public Map<String,Object> getDiagnostics() {
+      Map<String,Object> diagnostics = new HashMap<>();
+      diagnostics.put("Pages Fetched", pagesFetched);
+      diagnostics.put("Number of files", files.size());
+      diagnostics.put("Bytes", bytes);
+      diagnostics.put("Truncated", truncated);
+      return diagnostics;
+    }
+  }
+
+  static Map<String,Object> toMap(File file) {
+    Map<String,Object> map = new HashMap<>(4);
+    map.put("id", file.getId());
+    map.put("name", file.getName());
+    map.put("mimeType", file.getMimeType());
+    return map;
+  }
+
+  //Counts the UTF-8 encoded size of a value without encoding it
+  private static int utf8Length(String value) {
+    if (value == null) {
+      return 0;
+    }
+    int length = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        length += 1;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c)) {
+        length += 4;
+        i++;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+}
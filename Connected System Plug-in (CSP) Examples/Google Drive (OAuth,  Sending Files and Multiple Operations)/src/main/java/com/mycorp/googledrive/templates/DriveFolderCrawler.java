@@ -0,0 +1,198 @@
+package com.mycorp.googledrive.templates;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.api.services.drive.Drive;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Lists a Drive folder and all of its subfolders, returning every file as a flat list with its path.
+ *
+ * Subfolders are listed in parallel on a work-stealing {@link ForkJoinPool} of the crawl's own, sized to its
+ * configured concurrency, so a crawl waiting on its listings or on the request budget never holds up another
+ * crawl. Page requests wait on a {@link RateLimiter} shared by every crawl of the same OAuth client and rate, so
+ * neither a wide tree nor several crawls running at once can exceed that budget. A folder can have more than one parent in Drive, so visited folder
+ * ids are tracked to make sure each folder is listed only once and the crawl cannot loop.
+ */
+public class DriveFolderCrawler {
+
+  public static final int DEFAULT_CONCURRENCY = 8;
+  public static final int DEFAULT_REQUESTS_PER_SECOND = 10;
+  public static final int MAX_CONCURRENCY = 16;
+
+  static final String FOLDER_MIME_TYPE = "application/vnd.google-apps.folder";
+
+  //One request budget per OAuth client and rate, so crawls configured with different rates never reset each
+  // other's. Limiters that stop being used age out of the cache
+  private static final LoadingCache<String,RateLimiter> RATE_LIMITERS = CacheBuilder.newBuilder()
+      .maximumSize(1_000)
+      .expireAfterAccess(1, TimeUnit.HOURS)
+      .build(CacheLoader.from(key -> RateLimiter.create(Double.parseDouble(key.substring(0, key.indexOf('/'))))));
+
+  private final Drive drive;
+  private final int concurrency;
+  private final int maxItems;
+  private final RateLimiter rateLimiter;
+
+  /**
+   * Creates a crawler whose page requests count against the request budget of the given OAuth client id at
+   * the given rate, which is shared with every other crawl of that client at the same rate.
+   */
+  public DriveFolderCrawler(
+      Drive drive,
+      String clientId,
+      Integer concurrency,
+      Integer requestsPerSecond,
+      Integer maxItems) {
+    this.drive = drive;
+    this.concurrency = Math.min(valueOrDefault(concurrency, DEFAULT_CONCURRENCY), MAX_CONCURRENCY);
+    this.maxItems = valueOrDefault(maxItems, DriveFileLister.DEFAULT_MAX_ITEMS);
+    int rate = valueOrDefault(requestsPerSecond, DEFAULT_REQUESTS_PER_SECOND);
+    this.rateLimiter = RATE_LIMITERS.getUnchecked(rate + "/" + (clientId == null ? "" : clientId));
+  }
+
+  /**
+   * Crawls the tree below the given folder. The first error returned by Google stops the crawl and is
+   * rethrown.
+   */
+  public Result crawl(String rootFolderId) throws IOException {
+    Result result = new Result(concurrency);
+    //Worker threads are daemons, and are gone once the pool is shut down
+    ForkJoinPool pool = new ForkJoinPool(concurrency);
+    try {
+      result.visitedFolders.add(rootFolderId);
+      pool.invoke(new FolderTask(rootFolderId, "", result));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      //Folders of this crawl that are still queued return without listing
+      result.stopped = true;
+      pool.shutdown();
+    }
+    return result;
+  }
+
+  private static int valueOrDefault(Integer value, int defaultValue) {
+    return value == null || value <= 0 ? defaultValue : value;
+  }
+
+  private class FolderTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final String folderId;
+    private final String path;
+    private final Result result;
+
+    private FolderTask(String folderId, String path, Result result) {
+      this.folderId = folderId;
+      this.path = path;
+      this.result = result;
+    }
+
+    @Override
+    protected void compute() {
+      if (result.truncated.get() || result.stopped) {
+        return;
+      }
+      DriveFileLister.Result listResult;
+      result.listingPermits.acquireUninterruptibly();
+      int running = result.runningListings.incrementAndGet();
+      result.peakConcurrentListings.accumulateAndGet(running, Math::max);
+      try {
+        listResult = new DriveFileLister(drive, null, maxItems, null).withRateLimiter(rateLimiter)
+            .list(folderId);
+      } catch (IOException e) {
+        result.stopped = true;
+        throw new UncheckedIOException(e);
+      } finally {
+        result.runningListings.decrementAndGet();
+        result.listingPermits.release();
+      }
+      result.foldersListed.incrementAndGet();
+      result.pagesFetched.addAndGet(listResult.getPagesFetched());
+      if (listResult.isTruncated()) {
+        result.truncated.set(true);
+      }
+
+      List<FolderTask> subfolders = new ArrayList<>();
+      for (Map<String,Object> file : listResult.getFiles()) {
+        if (result.fileCount.incrementAndGet() > maxItems) {
+          result.truncated.set(true);
+          break;
+        }
+        String filePath = path + "/" + file.get("name");
+        file.put("path", filePath);
+        result.files.add(file);
+
+        String id = (String)file.get("id");
+        if (FOLDER_MIME_TYPE.equals(file.get("mimeType")) && result.visitedFolders.add(id)) {
+          subfolders.add(new FolderTask(id, filePath, result));
+        }
+      }
+      invokeAll(subfolders);
+    }
+  }
+
+  /**
+   * Flattened tree of every file found, along with the counters shown in the response diagnostics.
+   */
+  public static class Result {
+    private final Queue<Map<String,Object>> files = new ConcurrentLinkedQueue<>();
+    private final Set<String> visitedFolders = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger fileCount = new AtomicInteger();
+    private final AtomicInteger foldersListed = new AtomicInteger();
+    private final AtomicInteger pagesFetched = new AtomicInteger();
+    private final AtomicInteger runningListings = new AtomicInteger();
+    private final AtomicInteger peakConcurrentListings = new AtomicInteger();
+    private final AtomicBoolean truncated = new AtomicBoolean();
+    //Keeps listings at the crawl's concurrency even when the pool adds threads while tasks wait on subfolders
+    private final Semaphore listingPermits;
+    private volatile boolean stopped;
+
+    private Result(int concurrency) {
+      listingPermits = new Semaphore(concurrency);
+    }
+
+    /**
+     * Files sorted by path, so that the result is stable regardless of the order folders finished in.
+     */
+    public List<Map<String,Object>> getFiles() {
+      List<Map<String,Object>> sorted = new ArrayList<>(files);
+      sorted.sort(Comparator.comparing(file -> (String)file.get("path")));
+      return sorted;
+    }
+
+    public boolean isTruncated() {
+      return truncated.get();
+    }
+
+    public Map<String,Object> getDiagnostics() {
+      Map<String,Object> diagnostics = new HashMap<>();
+      diagnostics.put("Folders Listed", foldersListed.get());
+      diagnostics.put("Pages Fetched", pagesFetched.get());
+      diagnostics.put("Number of files", files.size());
+      diagnostics.put("Peak Concurrent Listings", peakConcurrentListings.get());
+      diagnostics.put("Truncated", truncated.get());
+      return diagnostics;
+    }
+  }
+}
@@ -0,0 +1,281 @@
+package com.mycorp.googledrive.templates;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.appian.connectedsystems.templateframework.sdk.configuration.Document;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.ByteArrayContent;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.json.JsonHttpContent;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Uploads a document to Drive with the resumable upload protocol, see
+ * https://developers.google.com/drive/api/v3/manage-uploads#resumable
+ *
+ * The document is sent in fixed size chunks. When a chunk fails, Google is asked how many bytes it has
+ * received and the upload continues from there. The upload session URI is also remembered until the upload
+ * completes, so if the whole integration is retried for the same document it picks up from the last byte
+ * Google acknowledged instead of sending the document again.
+ *
+ * Remembered sessions are keyed by the Drive account as well as the document, so an upload is only ever
+ * resumed by the account that started it. A session is taken out of the cache while an upload is using it
+ * and only put back if the upload fails, so two executions never write chunks into the same session.
+ *
+ * Each upload holds one chunk in memory. Chunk buffers of every upload on the node are taken from a budget of
+ * {@link #MAX_BUFFERED_MB}, so parallel batch uploads and several executions at once wait for memory instead of
+ * exhausting the heap.
+ */
+public class DriveResumableUploader {
+
+  public static final int DEFAULT_CHUNK_SIZE_MB = 8;
+  //Each upload holds one chunk in memory
+  public static final int MAX_CHUNK_SIZE_MB = 64;
+  //Chunk buffers held at once by all uploads on the node
+  public static final int MAX_BUFFERED_MB = 256;
+  //Documents up to this size are sent in a single request
+  public static final long RESUMABLE_THRESHOLD_BYTES = 5 * 1024 * 1024;
+
+  private static final String UPLOAD_URL =
+      "https://www.googleapis.com/upload/drive/v3/files?uploadType=resumable&fields=name,id,mimeType";
+  //Google requires every chunk except the last to be a multiple of 256 KB
+  private static final int CHUNK_GRANULARITY = 256 * 1024;
+  private static final int MAX_CHUNK_FAILURES = 3;
+  private static final int RESUME_INCOMPLETE = 308;
+
+  //One permit per 256 KB of chunk buffer, fair so that uploads with large chunks are not starved by small ones
+  private static final Semaphore BUFFER_PERMITS =
+      new Semaphore((int)(MAX_BUFFERED_MB * 1024L * 1024L / CHUNK_GRANULARITY), true);
+
+  //Google keeps an upload session for a week; remembering it for a day is enough to cover retries
+  private static final Cache<String,String> UPLOAD_SESSIONS = CacheBuilder.newBuilder()
+      .maximumSize(1_000)
+      .expireAfterWrite(1, TimeUnit.DAYS)
+      .build();
+  //Drive clients are cached per access token, so the account of each client only needs to be asked for once
+  private static final Cache<Drive,String> ACCOUNT_IDS = CacheBuilder.newBuilder()
+      .weakKeys()
+      .build();
+
+  private final Drive drive;
+  private final int chunkSize;
+
+  public DriveResumableUploader(Drive drive, Integer chunkSizeMb) {
+    this.drive = drive;
+    long megabytes = chunkSizeMb == null || chunkSizeMb <= 0 ? DEFAULT_CHUNK_SIZE_MB :
+        Math.min(chunkSizeMb, MAX_CHUNK_SIZE_MB);
+    this.chunkSize = (int)Math.max(CHUNK_GRANULARITY,
+        megabytes * 1024 * 1024 / CHUNK_GRANULARITY * CHUNK_GRANULARITY);
+  }
+
+  public File upload(File metadata, Document document, String mimeType) throws IOException {
+    long size = document.getFileSize();
+    String sessionKey = getAccountId() + "/" + document.getId() + "/" + size + "/" + metadata.getName();
+
+    //Removing the session claims it, a concurrent upload of the same document starts its own session
+    String sessionUri = UPLOAD_SESSIONS.asMap().remove(sessionKey);
+    boolean sessionFinished = false;
+    InputStream inputStream = null;
+    int bufferPermits = 0;
+    try {
+      long offset = 0;
+      if (sessionUri != null) {
+        UploadStatus status = queryStatus(sessionUri, size);
+        if (status.file != null) {
+          sessionFinished = true;
+          return status.file;
+        }
+        if (status.expired) {
+          sessionUri = null;
+        } else {
+          offset = status.acknowledgedBytes;
+        }
+      }
+      if (sessionUri == null) {
+        sessionUri = startSession(metadata, mimeType, size);
+      }
+
+      bufferPermits = acquireBuffer();
+      byte[] buffer = new byte[chunkSize];
+      int failures = 0;
+      long streamPosition = offset;
+      inputStream = openAt(document, offset);
+      while (true) {
+        if (streamPosition != offset) {
+          //Google acknowledged a different number of bytes than we have read so far
+          inputStream.close();
+          inputStream = openAt(document, offset);
+          streamPosition = offset;
+        }
+        int length = (int)Math.min(chunkSize, size - offset);
+        ByteStreams.readFully(inputStream, buffer, 0, length);
+        streamPosition += length;
+
+        UploadStatus status;
+        IOException error = null;
+        try {
+          status = putChunk(sessionUri, mimeType, buffer, length, offset, size);
+        } catch (GoogleJsonResponseException e) {
+          if (e.getStatusCode() < 500) {
+            throw e;
+          }
+          error = e;
+          status = queryStatus(sessionUri, size);
+        } catch (IOException e) {
+          error = e;
+          status = queryStatus(sessionUri, size);
+        }
+
+        if (status.file != null) {
+          sessionFinished = true;
+          return status.file;
+        }
+        if (status.expired) {
+          sessionFinished = true;
+          throw new IOException("The upload session expired before the upload completed");
+        }
+        //Only a chunk that moves the upload forward counts as a success, otherwise the same chunk could be
+        // sent forever
+        if (status.acknowledgedBytes > offset) {
+          failures = 0;
+        } else if (++failures > MAX_CHUNK_FAILURES) {
+          throw error != null ? error :
+              new IOException("Google stopped acknowledging the upload at byte " + offset + " of " + size);
+        }
+        offset = status.acknowledgedBytes;
+      }
+    } finally {
+      if (inputStream != null) {
+        inputStream.close();
+      }
+      BUFFER_PERMITS.release(bufferPermits);
+      //An upload that failed part way can be resumed by retrying the integration
+      if (!sessionFinished && sessionUri != null) {
+        UPLOAD_SESSIONS.put(sessionKey, sessionUri);
+      }
+    }
+  }
+
+  //Waits until the chunk buffer fits in the node's budget, returning the permits to release once it is freed
+  private int acquireBuffer() throws IOException {
+    int permits = chunkSize / CHUNK_GRANULARITY;
+    try {
+      BUFFER_PERMITS.acquire(permits);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for upload memory");
+    }
+    return permits;
+  }
+
+  //The permission id is Drive's stable identifier of the account the access token belongs to
+  private String getAccountId() throws IOException {
+    String accountId = ACCOUNT_IDS.getIfPresent(drive);
+    if (accountId == null) {
+      accountId = drive.about().get().setFields("user(permissionId)").execute().getUser().getPermissionId();
+      ACCOUNT_IDS.put(drive, accountId);
+    }
+    return accountId;
+  }
+
+  private String startSession(File metadata, String mimeType, long size) throws IOException {
+    HttpRequest request = drive.getRequestFactory()
+        .buildPostRequest(new GenericUrl(UPLOAD_URL), new JsonHttpContent(drive.getJsonFactory(), metadata));
+    request.getHeaders().set("X-Upload-Content-Type", mimeType);
+    request.getHeaders().set("X-Upload-Content-Length", size);
+    HttpResponse response = execute(request);
+    try {
+      return response.getHeaders().getLocation();
+    } finally {
+      response.ignore();
+    }
+  }
+
+  private UploadStatus putChunk(String sessionUri, String mimeType, byte[] buffer, int length, long offset, long size)
+      throws IOException {
+    HttpRequest request = drive.getRequestFactory()
+        .buildPutRequest(new GenericUrl(sessionUri), new ByteArrayContent(mimeType, buffer, 0, length));
+    request.getHeaders().setContentRange("bytes " + offset + "-" + (offset + length - 1) + "/" + size);
+    return toStatus(execute(request));
+  }
+
+  //Asks Google how many bytes of the upload it has received so far
+  private UploadStatus queryStatus(String sessionUri, long size) throws IOException {
+    HttpRequest request = drive.getRequestFactory().buildPutRequest(new GenericUrl(sessionUri), null);
+    request.getHeaders().setContentRange("bytes */" + size);
+    try {
+      return toStatus(execute(request));
+    } catch (GoogleJsonResponseException e) {
+      if (e.getStatusCode() == 404 || e.getStatusCode() == 410) {
+        return UploadStatus.expired();
+      }
+      throw e;
+    }
+  }
+
+  private UploadStatus toStatus(HttpResponse response) throws IOException {
+    if (response.getStatusCode() != RESUME_INCOMPLETE) {
+      return UploadStatus.completed(response.parseAs(File.class));
+    }
+    try {
+      //The Range header looks like "bytes=0-1048575" and is missing when nothing has been received yet
+      String range = response.getHeaders().getRange();
+      long acknowledgedBytes = range == null ? 0 : Long.parseLong(range.substring(range.indexOf('-') + 1)) + 1;
+      return UploadStatus.incomplete(acknowledgedBytes);
+    } finally {
+      response.ignore();
+    }
+  }
+
+  //Google answers an unfinished upload with 308, which must not be treated as an error or a redirect
+  private HttpResponse execute(HttpRequest request) throws IOException {
+    request.setParser(drive.getObjectParser());
+    request.setFollowRedirects(false);
+    request.setThrowExceptionOnExecuteError(false);
+    HttpResponse response = request.execute();
+    if (!response.isSuccessStatusCode() && response.getStatusCode() != RESUME_INCOMPLETE) {
+      throw GoogleJsonResponseException.from(drive.getJsonFactory(), response);
+    }
+    return response;
+  }
+
+  private static InputStream openAt(Document document, long offset) throws IOException {
+    InputStream inputStream = document.getInputStream();
+    ByteStreams.skipFully(inputStream, offset);
+    return inputStream;
+  }
+
+  private static final class UploadStatus {
+    private final File file;
+    private final long acknowledgedBytes;
+    private final boolean expired;
+
+    private UploadStatus(File file, long acknowledgedBytes, boolean expired) {
+      this.file = file;
+      this.acknowledgedBytes = acknowledgedBytes;
+      this.expired = expired;
+    }
+
+    static UploadStatus completed(File file) {
+      return new UploadStatus(file, 0, false);
+    }
+
+    static UploadStatus incomplete(long acknowledgedBytes) {
+      return new UploadStatus(null, acknowledgedBytes, false);
+    }
+
+    static UploadStatus expired() {
+      return new UploadStatus(null, 0, true);
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package com.mycorp.googledrive.templates;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.appian.connectedsystems.simplified.sdk.SimpleIntegrationTemplate;
+import com.appian.connectedsystems.simplified.sdk.configuration.SimpleConfiguration;
+import com.appian.connectedsystems.templateframework.sdk.ExecutionContext;
+import com.appian.connectedsystems.templateframework.sdk.IntegrationResponse;
+import com.appian.connectedsystems.templateframework.sdk.TemplateId;
+import com.appian.connectedsystems.templateframework.sdk.configuration.PropertyPath;
+import com.appian.connectedsystems.templateframework.sdk.configuration.SystemType;
+import com.appian.connectedsystems.templateframework.sdk.diagnostics.IntegrationDesignerDiagnostic;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import com.google.common.base.Stopwatch;
+
+@TemplateId(name = "GoogleDriveBatchCreateFoldersIntegrationTemplate")
+public class GoogleDriveBatchCreateFoldersIntegrationTemplate extends SimpleIntegrationTemplate {
+
+  private static final String FOLDER_NAMES_KEY = "folderNames";
+
+  @Override
+  protected SimpleConfiguration getConfiguration(
+      SimpleConfiguration integrationConfiguration,
+      SimpleConfiguration connectedSystemConfiguration,
+      PropertyPath propertyPath,
+      ExecutionContext executionContext) {
+    return integrationConfiguration.setProperties(
+        listTypeProperty(FOLDER_NAMES_KEY).label("Folder Names")
+            .itemType(SystemType.STRING)
+            .isRequired(true)
+            .isExpressionable(true)
+            .build());
+  }
+
+  @Override
+  protected IntegrationResponse execute(
+      SimpleConfiguration integrationConfiguration,
+      SimpleConfiguration connectedSystemConfiguration,
+      ExecutionContext executionContext) {
+    List<String> folderNames = integrationConfiguration.getValue(FOLDER_NAMES_KEY);
+    if (folderNames == null) {
+      folderNames = Collections.emptyList();
+    }
+
+    IntegrationDesignerDiagnostic.IntegrationDesignerDiagnosticBuilder diagnosticBuilder = IntegrationDesignerDiagnostic
+        .builder();
+    Stopwatch stopwatch = Stopwatch.createStarted();
+
+    //Creating a folder is a metadata only call, so all of them are sent through Google's batch endpoint
+    Drive drive = IntegrationExecutionUtils.getDriveClient(executionContext);
+    List<Drive.Files.Create> requests = new ArrayList<>(folderNames.size());
+    try {
+      for (String folderName : folderNames) {
+        File folder = new File().setName(folderName).setMimeType(DriveFolderCrawler.FOLDER_MIME_TYPE);
+        requests.add(drive.files().create(folder).setFields("name, id, mimeType"));
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    DriveBatchRunner runner = new DriveBatchRunner(drive, null);
+    List<DriveBatchRunner.ItemResult<File>> results = runner.executeBatched(requests);
+    if (DriveBatchRunner.allUnauthorized(results)) {
+      throw IntegrationExecutionUtils.expiredToken(executionContext);
+    }
+
+    Map<String,Object> requestDiagnostics = IntegrationExecutionUtils.getRequestDiagnostics(
+        connectedSystemConfiguration);
+    requestDiagnostics.put("Folder Names", folderNames);
+
+    IntegrationDesignerDiagnostic diagnostic = diagnosticBuilder
+        .addExecutionTimeDiagnostic(stopwatch.stop().elapsed(TimeUnit.MILLISECONDS))
+        .addRequestDiagnostic(requestDiagnostics)
+        .addResponseDiagnostic(runner.getDiagnostics(results))
+        .build();
+
+    Map<String,Object> result = DriveBatchRunner.getResult(results, IntegrationExecutionUtils::getResult);
+    return IntegrationResponse.forSuccess(result).withDiagnostic(diagnostic).build();
+  }
+}
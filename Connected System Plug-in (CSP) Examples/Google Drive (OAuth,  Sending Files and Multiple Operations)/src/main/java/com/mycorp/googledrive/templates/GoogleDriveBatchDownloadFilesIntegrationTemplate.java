@@ -0,0 +1,131 @@
+package com.mycorp.googledrive.templates;
+
+import static com.mycorp.googledrive.templates.GoogleDriveBatchSendFilesIntegrationTemplate.PARALLELISM_KEY;
+import static com.mycorp.googledrive.templates.GoogleDriveDownloadFileIntegrationTemplate.FOLDER_ID_KEY;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.appian.connectedsystems.simplified.sdk.SimpleIntegrationTemplate;
+import com.appian.connectedsystems.simplified.sdk.configuration.SimpleConfiguration;
+import com.appian.connectedsystems.templateframework.sdk.DocumentDownloadService;
+import com.appian.connectedsystems.templateframework.sdk.ExecutionContext;
+import com.appian.connectedsystems.templateframework.sdk.IntegrationResponse;
+import com.appian.connectedsystems.templateframework.sdk.TemplateId;
+import com.appian.connectedsystems.templateframework.sdk.configuration.FolderPropertyDescriptor;
+import com.appian.connectedsystems.templateframework.sdk.configuration.PropertyPath;
+import com.appian.connectedsystems.templateframework.sdk.configuration.SystemType;
+import com.appian.connectedsystems.templateframework.sdk.diagnostics.IntegrationDesignerDiagnostic;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import com.google.common.base.Stopwatch;
+
+@TemplateId(name = "GoogleDriveBatchDownloadFilesIntegrationTemplate")
+public class GoogleDriveBatchDownloadFilesIntegrationTemplate extends SimpleIntegrationTemplate {
+
+  private static final String FILE_IDS_KEY = "fileIds";
+
+  @Override
+  protected SimpleConfiguration getConfiguration(
+      SimpleConfiguration integrationConfiguration,
+      SimpleConfiguration connectedSystemConfiguration,
+      PropertyPath updatedProperty,
+      ExecutionContext executionContext) {
+    return integrationConfiguration.setProperties(
+        listTypeProperty(FILE_IDS_KEY).label("File IDs")
+            .itemType(SystemType.STRING)
+            .isRequired(true)
+            .isExpressionable(true)
+            .build(),
+        FolderPropertyDescriptor.builder()
+            .key(FOLDER_ID_KEY)
+            .label("Save to Folder")
+            .isRequired(true)
+            .isExpressionable(true)
+            .build(),
+        integerProperty(PARALLELISM_KEY).label("Parallelism")
+            .instructionText("Number of files downloaded at the same time, up to " +
+                DriveBatchRunner.MAX_PARALLELISM + ". Defaults to " + DriveBatchRunner.DEFAULT_PARALLELISM)
+            .build());
+  }
+
+  @Override
+  protected IntegrationResponse execute(
+      SimpleConfiguration integrationConfiguration,
+      SimpleConfiguration connectedSystemConfiguration,
+      ExecutionContext executionContext) {
+    List<String> fileIds = integrationConfiguration.getValue(FILE_IDS_KEY);
+    if (fileIds == null) {
+      fileIds = Collections.emptyList();
+    }
+    Long folderId = integrationConfiguration.getValue(FOLDER_ID_KEY);
+
+    IntegrationDesignerDiagnostic.IntegrationDesignerDiagnosticBuilder diagnosticBuilder = IntegrationDesignerDiagnostic
+        .builder();
+    Stopwatch stopwatch = Stopwatch.createStarted();
+
+    Drive drive = IntegrationExecutionUtils.getDriveClient(executionContext);
+    DriveBatchRunner runner = new DriveBatchRunner(drive, integrationConfiguration.getValue(PARALLELISM_KEY));
+
+    //Metadata for every file is fetched through the batch endpoint first
+    List<Drive.Files.Get> requests = new ArrayList<>(fileIds.size());
+    try {
+      for (String fileId : fileIds) {
+        requests.add(drive.files().get(fileId).setFields(DriveDownloader.METADATA_FIELDS));
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    List<DriveBatchRunner.ItemResult<File>> metadata = runner.executeBatched(requests);
+    if (DriveBatchRunner.allUnauthorized(metadata)) {
+      throw IntegrationExecutionUtils.expiredToken(executionContext);
+    }
+
+    //Then the content of the files that were found is downloaded concurrently
+    List<Integer> found = new ArrayList<>(fileIds.size());
+    for (int i = 0; i < fileIds.size(); i++) {
+      if (metadata.get(i).isSuccess()) {
+        found.add(i);
+      }
+    }
+    List<String> ids = fileIds;
+    DriveDownloader downloader = new DriveDownloader(drive);
+    DocumentDownloadService documentDownloadService = executionContext.getDocumentDownloadService();
+    List<DriveBatchRunner.ItemResult<DriveDownloader.Download>> downloads = runner.executeConcurrently(found,
+        index -> downloader.download(ids.get(index), metadata.get(index).getValue(), folderId,
+            documentDownloadService));
+
+    //An item failed if either its metadata or its content could not be fetched
+    List<DriveBatchRunner.ItemResult<DriveDownloader.Download>> results = new ArrayList<>(fileIds.size());
+    for (int i = 0, next = 0; i < fileIds.size(); i++) {
+      results.add(metadata.get(i).isSuccess() ? downloads.get(next++) : metadata.get(i).asFailure());
+    }
+
+    Map<String,Object> requestDiagnostics = IntegrationExecutionUtils.getRequestDiagnostics(
+        connectedSystemConfiguration);
+    requestDiagnostics.put("File IDs", fileIds);
+    requestDiagnostics.put("Parallelism", runner.getParallelism());
+
+    IntegrationDesignerDiagnostic diagnostic = diagnosticBuilder
+        .addExecutionTimeDiagnostic(stopwatch.stop().elapsed(TimeUnit.MILLISECONDS))
+        .addRequestDiagnostic(requestDiagnostics)
+        .addResponseDiagnostic(runner.getDiagnostics(results))
+        .build();
+
+    Map<String,Object> result = DriveBatchRunner.getResult(results,
+        GoogleDriveBatchDownloadFilesIntegrationTemplate::toMap);
+    return IntegrationResponse.forSuccess(result).withDiagnostic(diagnostic).build();
+  }
+
+  private static Map<String,Object> toMap(DriveDownloader.Download download) {
+    Map<String,Object> item = new HashMap<>();
+    item.put("fileName", download.getFile().getName());
+    item.put("Document", download.getDocument());
+    return item;
+  }
+}
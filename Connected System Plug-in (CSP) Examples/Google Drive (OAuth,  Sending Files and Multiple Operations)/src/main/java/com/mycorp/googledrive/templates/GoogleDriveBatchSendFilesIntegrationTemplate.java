@@ -0,0 +1,93 @@
+package com.mycorp.googledrive.templates;
+
+import static com.mycorp.googledrive.templates.GoogleDriveSendFileIntegrationTemplate.CHUNK_SIZE_KEY;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.appian.connectedsystems.simplified.sdk.SimpleIntegrationTemplate;
+import com.appian.connectedsystems.simplified.sdk.configuration.SimpleConfiguration;
+import com.appian.connectedsystems.templateframework.sdk.ExecutionContext;
+import com.appian.connectedsystems.templateframework.sdk.IntegrationResponse;
+import com.appian.connectedsystems.templateframework.sdk.TemplateId;
+import com.appian.connectedsystems.templateframework.sdk.configuration.Document;
+import com.appian.connectedsystems.templateframework.sdk.configuration.PropertyPath;
+import com.appian.connectedsystems.templateframework.sdk.configuration.SystemType;
+import com.appian.connectedsystems.templateframework.sdk.diagnostics.IntegrationDesignerDiagnostic;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import com.google.common.base.Stopwatch;
+
+@TemplateId(name = "GoogleDriveBatchSendFilesIntegrationTemplate")
+public class GoogleDriveBatchSendFilesIntegrationTemplate extends SimpleIntegrationTemplate {
+
+  private static final String FILES_KEY = "files";
+  static final String PARALLELISM_KEY = "parallelism";
+
+  @Override
+  protected SimpleConfiguration getConfiguration(
+      SimpleConfiguration integrationConfiguration,
+      SimpleConfiguration connectedSystemConfiguration,
+      PropertyPath propertyPath,
+      ExecutionContext executionContext) {
+    return integrationConfiguration.setProperties(
+        listTypeProperty(FILES_KEY).label("Files")
+            .itemType(SystemType.DOCUMENT)
+            .isRequired(true)
+            .isExpressionable(true)
+            .instructionText("Each document is uploaded with its Appian name")
+            .build(),
+        integerProperty(PARALLELISM_KEY).label("Parallelism")
+            .instructionText("Number of documents uploaded at the same time, up to " +
+                DriveBatchRunner.MAX_PARALLELISM + ". Defaults to " + DriveBatchRunner.DEFAULT_PARALLELISM)
+            .build(),
+        //Shares its key with the Send File template
+        integerProperty(CHUNK_SIZE_KEY).label("Upload Chunk Size (MB)")
+            .instructionText("Documents larger than 5 MB are uploaded in chunks of this size, up to " +
+                DriveResumableUploader.MAX_CHUNK_SIZE_MB + ". Uploads wait once their chunks add up to " +
+                DriveResumableUploader.MAX_BUFFERED_MB + " MB. Defaults to " + DriveResumableUploader.DEFAULT_CHUNK_SIZE_MB)
+            .build());
+  }
+
+  @Override
+  protected IntegrationResponse execute(
+      SimpleConfiguration integrationConfiguration,
+      SimpleConfiguration connectedSystemConfiguration,
+      ExecutionContext executionContext) {
+    List<Document> documents = integrationConfiguration.getValue(FILES_KEY);
+    if (documents == null) {
+      documents = Collections.emptyList();
+    }
+    Integer chunkSizeMb = integrationConfiguration.getValue(CHUNK_SIZE_KEY);
+
+    IntegrationDesignerDiagnostic.IntegrationDesignerDiagnosticBuilder diagnosticBuilder = IntegrationDesignerDiagnostic
+        .builder();
+    Stopwatch stopwatch = Stopwatch.createStarted();
+
+    //Uploads carry content and cannot go through the batch endpoint, so they run concurrently instead
+    Drive drive = IntegrationExecutionUtils.getDriveClient(executionContext);
+    DriveBatchRunner runner = new DriveBatchRunner(drive, integrationConfiguration.getValue(PARALLELISM_KEY));
+    List<DriveBatchRunner.ItemResult<File>> results = runner.executeConcurrently(documents,
+        document -> GoogleDriveSendFileIntegrationTemplate.upload(drive, document, document.getFileName(),
+            chunkSizeMb));
+    if (DriveBatchRunner.allUnauthorized(results)) {
+      throw IntegrationExecutionUtils.expiredToken(executionContext);
+    }
+
+    Map<String,Object> requestDiagnostics = IntegrationExecutionUtils.getRequestDiagnostics(
+        connectedSystemConfiguration);
+    requestDiagnostics.put("Number of Documents", documents.size());
+    requestDiagnostics.put("Parallelism", runner.getParallelism());
+
+    IntegrationDesignerDiagnostic diagnostic = diagnosticBuilder
+        .addExecutionTimeDiagnostic(stopwatch.stop().elapsed(TimeUnit.MILLISECONDS))
+        .addRequestDiagnostic(requestDiagnostics)
+        .addResponseDiagnostic(runner.getDiagnostics(results))
+        .build();
+
+    Map<String,Object> result = DriveBatchRunner.getResult(results, IntegrationExecutionUtils::getResult);
+    return IntegrationResponse.forSuccess(result).withDiagnostic(diagnostic).build();
+  }
+}
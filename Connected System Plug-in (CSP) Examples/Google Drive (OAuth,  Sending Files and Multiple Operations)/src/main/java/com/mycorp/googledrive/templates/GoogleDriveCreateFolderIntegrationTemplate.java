@@ -13,10 +13,7 @@ import com.appian.connectedsystems.templateframework.sdk.IntegrationResponse;
 import com.appian.connectedsystems.templateframework.sdk.TemplateId;
 import com.appian.connectedsystems.templateframework.sdk.configuration.PropertyPath;
 import com.appian.connectedsystems.templateframework.sdk.diagnostics.IntegrationDesignerDiagnostic;
-import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
 import com.google.api.client.googleapis.json.GoogleJsonResponseException;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.jackson2.JacksonFactory;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.model.File;
 import com.google.common.base.Stopwatch;
@@ -52,11 +49,9 @@ public class GoogleDriveCreateFolderIntegrationTemplate extends SimpleIntegratio
     IntegrationDesignerDiagnostic.IntegrationDesignerDiagnosticBuilder diagnosticBuilder =  IntegrationDesignerDiagnostic.builder();
     Stopwatch stopwatch = Stopwatch.createStarted();
 
-    //GoogleCredential is used to create a Google client with Drive. In Google Drive API, folders and files
-    //are both a File object. To create a folder, you need to supply a File object with a folder name and folder
-    //MIME type
-    GoogleCredential credential = new GoogleCredential().setAccessToken(executionContext.getAccessToken().get());
-    Drive drive = new Drive.Builder(new NetHttpTransport(), JacksonFactory.getDefaultInstance(), credential).build();
+    //In Google Drive API, folders and files are both a File object. To create a folder, you need to supply a
+    //File object with a folder name and folder MIME type
+    Drive drive = IntegrationExecutionUtils.getDriveClient(executionContext);
     File file = new File().setName(folderName).setMimeType(FOLDER_MIME_TYPE);
     File responseFile;
     try {
@@ -68,7 +63,7 @@ public class GoogleDriveCreateFolderIntegrationTemplate extends SimpleIntegratio
     } catch (GoogleJsonResponseException e) {
       Map<String,Object> requestDiagnostics = getRequestDiagnostics(
           connectedSystemConfiguration, integrationConfiguration);
-      return IntegrationExecutionUtils.handleException(e, diagnosticBuilder,
+      return IntegrationExecutionUtils.handleException(e, executionContext, diagnosticBuilder,
           requestDiagnostics, stopwatch);
     } catch (IOException e) {
       throw new RuntimeException(e);
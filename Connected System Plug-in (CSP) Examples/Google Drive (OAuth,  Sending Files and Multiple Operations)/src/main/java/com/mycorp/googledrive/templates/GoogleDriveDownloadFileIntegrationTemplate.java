@@ -1,7 +1,8 @@
 package com.mycorp.googledrive.templates;
 
+import static com.mycorp.googledrive.templates.GoogleDriveBatchSendFilesIntegrationTemplate.PARALLELISM_KEY;
+
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -11,15 +12,11 @@ import com.appian.connectedsystems.simplified.sdk.configuration.SimpleConfigurat
 import com.appian.connectedsystems.templateframework.sdk.ExecutionContext;
 import com.appian.connectedsystems.templateframework.sdk.IntegrationResponse;
 import com.appian.connectedsystems.templateframework.sdk.TemplateId;
-import com.appian.connectedsystems.templateframework.sdk.configuration.Document;
 import com.appian.connectedsystems.templateframework.sdk.configuration.FolderPropertyDescriptor;
 import com.appian.connectedsystems.templateframework.sdk.configuration.PropertyPath;
 import com.appian.connectedsystems.templateframework.sdk.diagnostics.IntegrationDesignerDiagnostic;
-import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
 import com.google.api.services.drive.Drive;
-import com.google.api.services.drive.model.File;
 import com.google.common.base.Stopwatch;
 
 @TemplateId(name = "GoogleDriveDownloadFileIntegrationTemplate")
@@ -27,6 +24,8 @@ public class GoogleDriveDownloadFileIntegrationTemplate extends SimpleIntegratio
 
   public static final String FILE_ID_KEY = "fileId";
   public static final String FOLDER_ID_KEY = "folderID";
+  private static final String PARALLEL_KEY = "parallelDownload";
+  private static final String SEGMENT_SIZE_KEY = "segmentSizeMb";
 
   @Override
   protected SimpleConfiguration getConfiguration(
@@ -46,6 +45,18 @@ public class GoogleDriveDownloadFileIntegrationTemplate extends SimpleIntegratio
             .label("Save to Folder")
             .isRequired(true)
             .isExpressionable(true)
+            .build(),
+        booleanProperty(PARALLEL_KEY).label("Parallel Download")
+            .instructionText("Download large files as several byte ranges at the same time")
+            .build(),
+        integerProperty(SEGMENT_SIZE_KEY).label("Segment Size (MB)")
+            .instructionText("Size of each byte range when Parallel Download is on, up to " +
+                DriveDownloader.MAX_SEGMENT_SIZE_MB + ". Defaults to " + DriveDownloader.DEFAULT_SEGMENT_SIZE_MB)
+            .build(),
+        //Shares its key with the batch templates
+        integerProperty(PARALLELISM_KEY).label("Parallelism")
+            .instructionText("Number of byte ranges downloaded at the same time when Parallel Download is on, " +
+                "up to " + DriveDownloader.MAX_PARALLELISM + ". Defaults to " + DriveDownloader.DEFAULT_PARALLELISM)
             .build()
     );
   }
@@ -62,18 +73,23 @@ public class GoogleDriveDownloadFileIntegrationTemplate extends SimpleIntegratio
         .builder();
     Stopwatch stopwatch = Stopwatch.createStarted();
 
-    //GoogleCredential is used to create a Google client with Drive. To send a file, you need to supply a File
-    //and an InputStreamContent.
-    GoogleCredential credential = new GoogleCredential().setAccessToken(
-        executionContext.getAccessToken().get());
-    Drive drive = new Drive.Builder(new NetHttpTransport(), JacksonFactory.getDefaultInstance(),
-        credential).build();
+    Drive drive = IntegrationExecutionUtils.getDriveClient(executionContext);
 
-    File fileMetadata;
-    InputStream mediaInputStream;
+    //The stopwatch keeps running until the content has been written to the Appian document
+    DriveDownloader.Download download;
     try {
-      fileMetadata = drive.files().get(fileId).execute();
-      mediaInputStream = drive.files().get(fileId).executeMediaAsInputStream();
+      DriveDownloader downloader = new DriveDownloader(drive);
+      if (Boolean.TRUE.equals(integrationConfiguration.getValue(PARALLEL_KEY))) {
+        download = downloader.downloadInRanges(fileId, folderId, executionContext.getDocumentDownloadService(),
+            integrationConfiguration.getValue(SEGMENT_SIZE_KEY), integrationConfiguration.getValue(PARALLELISM_KEY));
+      } else {
+        download = downloader.download(fileId, folderId, executionContext.getDocumentDownloadService());
+      }
+    } catch (GoogleJsonResponseException e) {
+      Map<String,Object> requestDiagnostics = getRequestDiagnostics(connectedSystemConfiguration,
+          integrationConfiguration);
+      return IntegrationExecutionUtils.handleException(e, executionContext, diagnosticBuilder,
+          requestDiagnostics, stopwatch);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -82,20 +98,12 @@ public class GoogleDriveDownloadFileIntegrationTemplate extends SimpleIntegratio
     Map<String,Object> requestDiagnostics = getRequestDiagnostics(connectedSystemConfiguration,
         integrationConfiguration);
 
-    String fileName = fileMetadata.getName();
-    Document document = executionContext.getDocumentDownloadService()
-        .downloadDocument(mediaInputStream, folderId, fileName);
     Map<String,Object> result = new HashMap<>();
-    result.put("Document", document);
-
-    Map<String,Object> responseDiagnostics = new HashMap<>();
-    responseDiagnostics.put("File Name", fileName);
-    responseDiagnostics.put("File Type", fileMetadata.getMimeType());
-    responseDiagnostics.put("File Description", fileMetadata.getDescription());
+    result.put("Document", download.getDocument());
 
     IntegrationDesignerDiagnostic diagnostic = diagnosticBuilder.addExecutionTimeDiagnostic(elapsed)
         .addRequestDiagnostic(requestDiagnostics)
-        .addResponseDiagnostic(responseDiagnostics)
+        .addResponseDiagnostic(download.getDiagnostics())
         .build();
 
     return IntegrationResponse.forSuccess(result).withDiagnostic(diagnostic).build();
@@ -108,6 +116,10 @@ public class GoogleDriveDownloadFileIntegrationTemplate extends SimpleIntegratio
         connectedSystemConfiguration);
     String fileId = integrationConfiguration.getValue(FILE_ID_KEY);
     requestDiagnostics.put("File ID", fileId);
+    if (Boolean.TRUE.equals(integrationConfiguration.getValue(PARALLEL_KEY))) {
+      requestDiagnostics.put("Segment Size (MB)", integrationConfiguration.getValue(SEGMENT_SIZE_KEY));
+      requestDiagnostics.put("Parallelism", integrationConfiguration.getValue(PARALLELISM_KEY));
+    }
     return requestDiagnostics;
   }
 
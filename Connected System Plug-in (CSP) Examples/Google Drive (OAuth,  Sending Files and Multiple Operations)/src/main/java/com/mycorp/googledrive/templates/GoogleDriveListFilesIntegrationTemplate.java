@@ -1,7 +1,6 @@
 package com.mycorp.googledrive.templates;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -13,18 +12,16 @@ import com.appian.connectedsystems.templateframework.sdk.IntegrationResponse;
 import com.appian.connectedsystems.templateframework.sdk.TemplateId;
 import com.appian.connectedsystems.templateframework.sdk.configuration.PropertyPath;
 import com.appian.connectedsystems.templateframework.sdk.diagnostics.IntegrationDesignerDiagnostic;
-import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
 import com.google.api.client.googleapis.json.GoogleJsonResponseException;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.jackson2.JacksonFactory;
 import com.google.api.services.drive.Drive;
-import com.google.api.services.drive.model.File;
-import com.google.api.services.drive.model.FileList;
 import com.google.common.base.Stopwatch;
 
 @TemplateId(name = "GoogleDriveListFilesIntegrationTemplate")
 public class GoogleDriveListFilesIntegrationTemplate extends SimpleIntegrationTemplate {
-  private static final String FOLDER_ID_KEY = "folderId";
+  public static final String FOLDER_ID_KEY = "folderId";
+  private static final String PAGE_SIZE_KEY = "pageSize";
+  public static final String MAX_ITEMS_KEY = "maxItems";
+  private static final String MAX_BYTES_KEY = "maxBytes";
 
   @Override
   protected SimpleConfiguration getConfiguration(
@@ -35,7 +32,20 @@ public class GoogleDriveListFilesIntegrationTemplate extends SimpleIntegrationTe
     return integrationConfiguration.setProperties(textProperty(FOLDER_ID_KEY).label("Folder Id")
         .instructionText("If left blank, it will list the files in the root folder. Otherwise it will list the " +
             "children files in the specified folder")
-        .build());
+        .build(),
+        //Large folders are read page by page. These settings control the size of each page and how much of
+        //the folder is returned before the listing stops
+        integerProperty(PAGE_SIZE_KEY).label("Page Size")
+            .instructionText("Number of files requested per call to Google, up to 1000. Defaults to " +
+                DriveFileLister.DEFAULT_PAGE_SIZE)
+            .build(),
+        integerProperty(MAX_ITEMS_KEY).label("Max Files")
+            .instructionText("Stop listing after this many files. Defaults to " + DriveFileLister.DEFAULT_MAX_ITEMS)
+            .build(),
+        integerProperty(MAX_BYTES_KEY).label("Max Bytes")
+            .instructionText("Stop listing once the ids, names and MIME types returned reach this size. " +
+                "Defaults to " + DriveFileLister.DEFAULT_MAX_BYTES)
+            .build());
   }
 
   @Override
@@ -49,39 +59,34 @@ public class GoogleDriveListFilesIntegrationTemplate extends SimpleIntegrationTe
         .builder();
     Stopwatch stopwatch = Stopwatch.createStarted();
 
-    GoogleCredential credential = new GoogleCredential().setAccessToken(
-        executionContext.getAccessToken().get());
-    Drive drive = new Drive.Builder(new NetHttpTransport(), JacksonFactory.getDefaultInstance(),
-        credential).build();
+    Drive drive = IntegrationExecutionUtils.getDriveClient(executionContext);
 
-    ArrayList<File> queriedFiles = new ArrayList<File>();
-    Drive.Files.List request;
+    DriveFileLister lister = new DriveFileLister(drive, integrationConfiguration.getValue(PAGE_SIZE_KEY),
+        integrationConfiguration.getValue(MAX_ITEMS_KEY), integrationConfiguration.getValue(MAX_BYTES_KEY));
+    DriveFileLister.Result listResult;
     try {
-      // This request is only being performed once and does not deal with paging results, which means that
-      // the result list might not be complete
-      request = drive.files().list();
       if (folderId == null || folderId.isEmpty()) {
         folderId = "root";
       }
-      request.setQ("'" + folderId + "' in parents");
       try {
-        FileList files = request.execute();
-        queriedFiles.addAll(files.getFiles());
+        // Follows nextPageToken until the whole folder has been read or one of the caps has been reached
+        listResult = lister.list(folderId);
       } catch (GoogleJsonResponseException e) {
         Map<String,Object> requestDiagnostics = getRequestDiagnostics(folderId, connectedSystemConfiguration);
-        return IntegrationExecutionUtils.handleException(e, diagnosticBuilder, requestDiagnostics, stopwatch);
+        return IntegrationExecutionUtils.handleException(e, executionContext, diagnosticBuilder,
+            requestDiagnostics, stopwatch);
       }
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
 
     HashMap<String,Object> resultMap = new HashMap<>();
-    resultMap.put("files", queriedFiles);
+    resultMap.put("files", listResult.getFiles());
+    resultMap.put("truncated", listResult.isTruncated());
     Map<String,Object> requestDiagnostics = getRequestDiagnostics(
         folderId, connectedSystemConfiguration);
 
-    Map<String,Object> diagnosticResponse = new HashMap<>();
-    diagnosticResponse.put("Number of files", queriedFiles.size());
+    Map<String,Object> diagnosticResponse = listResult.getDiagnostics();
     IntegrationDesignerDiagnostic diagnostic = diagnosticBuilder
         .addExecutionTimeDiagnostic(stopwatch.stop().elapsed(TimeUnit.MILLISECONDS))
         .addRequestDiagnostic(requestDiagnostics)
@@ -0,0 +1,111 @@
+package com.mycorp.googledrive.templates;
+
+import static com.mycorp.googledrive.templates.GoogleDriveListFilesIntegrationTemplate.FOLDER_ID_KEY;
+import static com.mycorp.googledrive.templates.GoogleDriveListFilesIntegrationTemplate.MAX_ITEMS_KEY;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.appian.connectedsystems.simplified.sdk.SimpleIntegrationTemplate;
+import com.appian.connectedsystems.simplified.sdk.configuration.SimpleConfiguration;
+import com.appian.connectedsystems.templateframework.sdk.ExecutionContext;
+import com.appian.connectedsystems.templateframework.sdk.IntegrationResponse;
+import com.appian.connectedsystems.templateframework.sdk.TemplateId;
+import com.appian.connectedsystems.templateframework.sdk.configuration.PropertyPath;
+import com.appian.connectedsystems.templateframework.sdk.diagnostics.IntegrationDesignerDiagnostic;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.services.drive.Drive;
+import com.google.common.base.Stopwatch;
+
+@TemplateId(name = "GoogleDriveListFolderTreeIntegrationTemplate")
+public class GoogleDriveListFolderTreeIntegrationTemplate extends SimpleIntegrationTemplate {
+
+  private static final String CONCURRENCY_KEY = "concurrency";
+  private static final String REQUESTS_PER_SECOND_KEY = "requestsPerSecond";
+
+  @Override
+  protected SimpleConfiguration getConfiguration(
+      SimpleConfiguration integrationConfiguration,
+      SimpleConfiguration connectedSystemConfiguration,
+      PropertyPath updatedProperty,
+      ExecutionContext executionContext) {
+    //The folder id and max files keys are shared with the List Files template, therefore when you toggle
+    //between operations, the values you enter in these fields will persist.
+    return integrationConfiguration.setProperties(
+        textProperty(FOLDER_ID_KEY).label("Folder Id")
+            .instructionText("If left blank, it will list the root folder. Files in every subfolder are " +
+                "included along with their path")
+            .build(),
+        integerProperty(MAX_ITEMS_KEY).label("Max Files")
+            .instructionText("Stop listing after this many files. Defaults to " + DriveFileLister.DEFAULT_MAX_ITEMS)
+            .build(),
+        integerProperty(CONCURRENCY_KEY).label("Concurrency")
+            .instructionText("Number of folders listed at the same time, up to " + DriveFolderCrawler.MAX_CONCURRENCY +
+                ". Defaults to " + DriveFolderCrawler.DEFAULT_CONCURRENCY)
+            .build(),
+        integerProperty(REQUESTS_PER_SECOND_KEY).label("Requests per Second")
+            .instructionText("Maximum number of calls made to Google per second. The limit is shared by every " +
+                "folder tree listing that uses the same Client Id and rate, including ones running at the same time. " +
+                "Defaults to " + DriveFolderCrawler.DEFAULT_REQUESTS_PER_SECOND)
+            .build());
+  }
+
+  @Override
+  protected IntegrationResponse execute(
+      SimpleConfiguration integrationConfiguration,
+      SimpleConfiguration connectedSystemConfiguration,
+      ExecutionContext executionContext) {
+    String folderId = integrationConfiguration.getValue(FOLDER_ID_KEY);
+    if (folderId == null || folderId.isEmpty()) {
+      folderId = "root";
+    }
+
+    IntegrationDesignerDiagnostic.IntegrationDesignerDiagnosticBuilder diagnosticBuilder = IntegrationDesignerDiagnostic
+        .builder();
+    Stopwatch stopwatch = Stopwatch.createStarted();
+
+    Drive drive = IntegrationExecutionUtils.getDriveClient(executionContext);
+    DriveFolderCrawler crawler = new DriveFolderCrawler(drive,
+        connectedSystemConfiguration.getValue(GoogleDriveSampleConnectedSystemTemplate.CLIENT_ID_KEY),
+        integrationConfiguration.getValue(CONCURRENCY_KEY), integrationConfiguration.getValue(REQUESTS_PER_SECOND_KEY),
+        integrationConfiguration.getValue(MAX_ITEMS_KEY));
+    DriveFolderCrawler.Result crawlResult;
+    try {
+      crawlResult = crawler.crawl(folderId);
+    } catch (GoogleJsonResponseException e) {
+      Map<String,Object> requestDiagnostics = getRequestDiagnostics(folderId, connectedSystemConfiguration,
+          integrationConfiguration);
+      return IntegrationExecutionUtils.handleException(e, executionContext, diagnosticBuilder,
+          requestDiagnostics, stopwatch);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+
+    Map<String,Object> resultMap = new HashMap<>();
+    resultMap.put("files", crawlResult.getFiles());
+    resultMap.put("truncated", crawlResult.isTruncated());
+    Map<String,Object> requestDiagnostics = getRequestDiagnostics(folderId, connectedSystemConfiguration,
+        integrationConfiguration);
+
+    IntegrationDesignerDiagnostic diagnostic = diagnosticBuilder
+        .addExecutionTimeDiagnostic(stopwatch.stop().elapsed(TimeUnit.MILLISECONDS))
+        .addRequestDiagnostic(requestDiagnostics)
+        .addResponseDiagnostic(crawlResult.getDiagnostics())
+        .build();
+    return IntegrationResponse.forSuccess(resultMap).withDiagnostic(diagnostic).build();
+  }
+
+  private Map<String,Object> getRequestDiagnostics(
+      String folderId,
+      SimpleConfiguration connectedSystemConfiguration,
+      SimpleConfiguration integrationConfiguration) {
+    Map<String,Object> requestDiagnostics = IntegrationExecutionUtils.getRequestDiagnostics(
+        connectedSystemConfiguration);
+    requestDiagnostics.put("Folder ID", folderId);
+    requestDiagnostics.put("Concurrency", integrationConfiguration.getValue(CONCURRENCY_KEY));
+    requestDiagnostics.put("Requests per Second", integrationConfiguration.getValue(REQUESTS_PER_SECOND_KEY));
+    return requestDiagnostics;
+  }
+}
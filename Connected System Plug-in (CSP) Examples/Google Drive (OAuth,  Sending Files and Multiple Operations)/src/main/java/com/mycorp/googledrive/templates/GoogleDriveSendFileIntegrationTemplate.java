@@ -1,6 +1,7 @@
 package com.mycorp.googledrive.templates;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -12,11 +13,8 @@ import com.appian.connectedsystems.templateframework.sdk.TemplateId;
 import com.appian.connectedsystems.templateframework.sdk.configuration.Document;
 import com.appian.connectedsystems.templateframework.sdk.configuration.PropertyPath;
 import com.appian.connectedsystems.templateframework.sdk.diagnostics.IntegrationDesignerDiagnostic;
-import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
 import com.google.api.client.googleapis.json.GoogleJsonResponseException;
 import com.google.api.client.http.InputStreamContent;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.jackson2.JacksonFactory;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.model.File;
 import com.google.common.base.Stopwatch;
@@ -26,6 +24,7 @@ public class GoogleDriveSendFileIntegrationTemplate extends SimpleIntegrationTem
 
   public static final String FILE_KEY = "fileId";
   public static final String NAME_KEY = "fileName";
+  static final String CHUNK_SIZE_KEY = "chunkSizeMb";
 
   @Override
   protected SimpleConfiguration getConfiguration(
@@ -40,6 +39,11 @@ public class GoogleDriveSendFileIntegrationTemplate extends SimpleIntegrationTem
         //therefore when you toggle between operations, the value you enter in this field will persist.
         textProperty(NAME_KEY).label("File Name")
             .instructionText("If left blank, the document's Appian name will be used instead")
+            .build(),
+        integerProperty(CHUNK_SIZE_KEY).label("Upload Chunk Size (MB)")
+            .instructionText("Documents larger than 5 MB are uploaded in chunks of this size, up to " +
+                DriveResumableUploader.MAX_CHUNK_SIZE_MB + ", and a failed upload resumes from the last chunk " +
+                "Google received. Defaults to " + DriveResumableUploader.DEFAULT_CHUNK_SIZE_MB)
             .build());
   }
 
@@ -54,21 +58,17 @@ public class GoogleDriveSendFileIntegrationTemplate extends SimpleIntegrationTem
         .builder();
     Stopwatch stopwatch = Stopwatch.createStarted();
 
-    //GoogleCredential is used to create a Google client with Drive. To send a file, you need to supply a File
-    //and an InputStreamContent.
-    GoogleCredential credential = new GoogleCredential().setAccessToken(
-        executionContext.getAccessToken().get());
-    Drive drive = new Drive.Builder(new NetHttpTransport(), JacksonFactory.getDefaultInstance(),
-        credential).build();
-    File file = new File().setName(getNameForDocument(document, integrationConfiguration));
-    InputStreamContent mediaContent = new InputStreamContent("image/jpg", document.getInputStream());
+    //To send a file, you need to supply a File and the content of the document.
+    Drive drive = IntegrationExecutionUtils.getDriveClient(executionContext);
     File responseFile;
     try {
-      responseFile = drive.files().create(file, mediaContent).setFields("name, id, mimeType").execute();
+      responseFile = upload(drive, document, getNameForDocument(document, integrationConfiguration),
+          integrationConfiguration.getValue(CHUNK_SIZE_KEY));
     } catch (GoogleJsonResponseException e) {
       Map<String,Object> requestDiagnostics = getRequestDiagnostics(document, connectedSystemConfiguration,
           integrationConfiguration);
-      return IntegrationExecutionUtils.handleException(e, diagnosticBuilder, requestDiagnostics, stopwatch);
+      return IntegrationExecutionUtils.handleException(e, executionContext, diagnosticBuilder,
+          requestDiagnostics, stopwatch);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -98,9 +98,36 @@ public class GoogleDriveSendFileIntegrationTemplate extends SimpleIntegrationTem
     requestDiagnostics.put("Appian Document Extension", document.getExtension());
     requestDiagnostics.put("Appian Document Size", document.getFileSize());
     requestDiagnostics.put("Appian Document Parent Folder ID", document.getParentFolderId());
+    requestDiagnostics.put("MIME Type", IntegrationExecutionUtils.getMimeType(document.getExtension()));
+    requestDiagnostics.put("Upload Type", isResumable(document) ? "resumable" : "simple");
+    if (isResumable(document)) {
+      requestDiagnostics.put("Upload Chunk Size (MB)", integrationConfiguration.getValue(CHUNK_SIZE_KEY));
+    }
     return requestDiagnostics;
   }
 
+  /**
+   * Uploads a document, choosing a simple or resumable upload based on its size. Also used by
+   * {@link GoogleDriveBatchSendFilesIntegrationTemplate}.
+   */
+  static File upload(Drive drive, Document document, String name, Integer chunkSizeMb) throws IOException {
+    String mimeType = IntegrationExecutionUtils.getMimeType(document.getExtension());
+    File file = new File().setName(name).setMimeType(mimeType);
+    if (isResumable(document)) {
+      return new DriveResumableUploader(drive, chunkSizeMb).upload(file, document, mimeType);
+    }
+    //Small documents are sent along with their metadata in a single request
+    try (InputStream inputStream = document.getInputStream()) {
+      InputStreamContent mediaContent = new InputStreamContent(mimeType, inputStream);
+      return drive.files().create(file, mediaContent).setFields("name, id, mimeType").execute();
+    }
+  }
+
+  private static boolean isResumable(Document document) {
+    return document.getFileSize() != null &&
+        document.getFileSize() > DriveResumableUploader.RESUMABLE_THRESHOLD_BYTES;
+  }
+
   //Returns a file name if it's provided, otherwise use's the document's Appian name
   private String getNameForDocument(Document document, SimpleConfiguration integrationConfiguration) {
     String documentNameFromUserInput = integrationConfiguration.getValue(NAME_KEY);
@@ -1,22 +1,89 @@
 package com.mycorp.googledrive.templates;
 
+import java.net.URLConnection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import com.appian.connectedsystems.simplified.sdk.configuration.SimpleConfiguration;
+import com.appian.connectedsystems.templateframework.sdk.ExecutionContext;
 import com.appian.connectedsystems.templateframework.sdk.IntegrationError;
 import com.appian.connectedsystems.templateframework.sdk.IntegrationResponse;
 import com.appian.connectedsystems.templateframework.sdk.diagnostics.IntegrationDesignerDiagnostic;
 import com.appian.connectedsystems.templateframework.sdk.oauth.ExpiredTokenException;
+import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
 import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.model.File;
 import com.google.common.base.Stopwatch;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
 
 public class IntegrationExecutionUtils {
+
+  //NetHttpTransport is thread-safe and keeps its connections alive between requests, so a single instance
+  //is shared by every template in this plug-in
+  private static final HttpTransport HTTP_TRANSPORT = new NetHttpTransport();
+
+  //Drive clients are keyed by access token. When Appian refreshes a token, executions simply start using a
+  //new key; calls still holding the old client are not blocked and the old entry ages out of the cache
+  private static final LoadingCache<String,Drive> DRIVE_CLIENTS = CacheBuilder.newBuilder()
+      .maximumSize(1_000)
+      .expireAfterAccess(1, TimeUnit.HOURS)
+      .build(CacheLoader.from(IntegrationExecutionUtils::createDriveClient));
+
+  private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+  //Common document types that are missing from the JDK's own file name map
+  private static final Map<String,String> MIME_TYPES = ImmutableMap.<String,String>builder()
+      .put("csv", "text/csv")
+      .put("doc", "application/msword")
+      .put("docx", "application/vnd.openxmlformats-officedocument.wordprocessingml.document")
+      .put("json", "application/json")
+      .put("ppt", "application/vnd.ms-powerpoint")
+      .put("pptx", "application/vnd.openxmlformats-officedocument.presentationml.presentation")
+      .put("svg", "image/svg+xml")
+      .put("xls", "application/vnd.ms-excel")
+      .put("xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")
+      .build();
+
   private IntegrationExecutionUtils() {
   }
 
+  /**
+   * Returns a Drive client for the access token of this execution. GoogleCredential is used to create a
+   * Google client with Drive. Clients and the underlying HTTP transport are reused across executions
+   * instead of being built for every call.
+   */
+  public static Drive getDriveClient(ExecutionContext executionContext) {
+    return DRIVE_CLIENTS.getUnchecked(executionContext.getAccessToken().get());
+  }
+
+  private static Drive createDriveClient(String accessToken) {
+    GoogleCredential credential = new GoogleCredential().setAccessToken(accessToken);
+    return new Drive.Builder(HTTP_TRANSPORT, JacksonFactory.getDefaultInstance(), credential).build();
+  }
+
+  /**
+   * Returns the MIME type that matches an Appian document extension, so Drive shows and previews the file
+   * correctly. Falls back to application/octet-stream for unknown extensions.
+   */
+  public static String getMimeType(String extension) {
+    if (extension == null || extension.isEmpty()) {
+      return DEFAULT_MIME_TYPE;
+    }
+    String normalized = extension.toLowerCase();
+    String mimeType = MIME_TYPES.get(normalized);
+    if (mimeType == null) {
+      mimeType = URLConnection.getFileNameMap().getContentTypeFor("file." + normalized);
+    }
+    return mimeType == null ? DEFAULT_MIME_TYPE : mimeType;
+  }
+
   /**
    * Creates common fields of diagnostics objects for both Send File and Create Folder templates.
    * Diagnostic is information that will be displayed in the Request and Response tabs. You can
@@ -65,13 +132,13 @@ public class IntegrationExecutionUtils {
    */
   public static IntegrationResponse handleException(
       GoogleJsonResponseException e,
+      ExecutionContext executionContext,
       IntegrationDesignerDiagnostic.IntegrationDesignerDiagnosticBuilder diagnosticBuilder,
       Map<String,Object> requestDiagnostics,
       Stopwatch stopwatch) {
     if (e.getStatusCode() == 401) {
-      //Google returns a 401 exception if your credential is not authorized or expired. Throw an
-      //ExpiredTokenException when this happens, Appian will try to refresh the token.
-      throw new ExpiredTokenException();
+      //Google returns a 401 exception if your credential is not authorized or expired
+      throw expiredToken(executionContext);
     }
     long elapsed = stopwatch.stop().elapsed(TimeUnit.MILLISECONDS);
     IntegrationDesignerDiagnostic diagnostic = diagnosticBuilder.addExecutionTimeDiagnostic(elapsed)
@@ -85,4 +152,13 @@ public class IntegrationExecutionUtils {
 
     return IntegrationResponse.forError(error).withDiagnostic(diagnostic).build();
   }
+
+  /**
+   * Throw the returned exception when Google rejects the access token, Appian will then try to refresh the
+   * token. The cached client for the rejected token is dropped so it is not handed out again.
+   */
+  public static ExpiredTokenException expiredToken(ExecutionContext executionContext) {
+    DRIVE_CLIENTS.invalidate(executionContext.getAccessToken().get());
+    return new ExpiredTokenException();
+  }
 }
@@ -0,0 +1,169 @@
+package com.mycorp.googledrive.templates;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.services.drive.Drive;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Reads a Drive file as a sequence of byte ranges that are fetched concurrently, and hands the bytes out in
+ * file order.
+ *
+ * Up to {@code parallelism} segments are requested ahead of the one being read. A segment is only started
+ * once an earlier one has been consumed, so at most {@code parallelism} segments are held in memory no matter
+ * how large the file is. A segment that fails is requested again on its own without restarting the others.
+ */
+class RangeDownloadInputStream extends InputStream {
+
+  private static final int MAX_SEGMENT_ATTEMPTS = 3;
+  private static final long RETRY_DELAY_MS = 500;
+  private static final int PARTIAL_CONTENT = 206;
+  //Shared by every download, segments beyond this wait for a free fetcher
+  private static final int MAX_FETCHERS = 32;
+
+  //Daemon threads so that an idle pool never keeps the JVM alive
+  private static final ExecutorService SEGMENT_FETCHERS = Executors.newFixedThreadPool(MAX_FETCHERS,
+      new ThreadFactoryBuilder().setNameFormat("drive-segment-fetcher-%d").setDaemon(true).build());
+
+  private final Drive drive;
+  private final String fileId;
+  private final long size;
+  private final int segmentSize;
+  private final int parallelism;
+
+  private final Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+  private final AtomicInteger segmentRetries = new AtomicInteger();
+  private long nextSegmentStart;
+  private int segmentsFetched;
+  private byte[] segment = new byte[0];
+  private int position;
+
+  RangeDownloadInputStream(Drive drive, String fileId, long size, int segmentSize, int parallelism) {
+    this.drive = drive;
+    this.fileId = fileId;
+    this.size = size;
+    this.segmentSize = segmentSize;
+    this.parallelism = parallelism;
+    fillWindow();
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (position == segment.length && !nextSegment()) {
+      return -1;
+    }
+    return segment[position++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    if (position == segment.length && !nextSegment()) {
+      return -1;
+    }
+    int count = Math.min(length, segment.length - position);
+    System.arraycopy(segment, position, buffer, offset, count);
+    position += count;
+    return count;
+  }
+
+  @Override
+  public int available() {
+    return segment.length - position;
+  }
+
+  @Override
+  public void close() {
+    for (Future<byte[]> future : inFlight) {
+      future.cancel(true);
+    }
+    inFlight.clear();
+  }
+
+  int getSegmentsFetched() {
+    return segmentsFetched;
+  }
+
+  int getSegmentRetries() {
+    return segmentRetries.get();
+  }
+
+  private boolean nextSegment() throws IOException {
+    Future<byte[]> next = inFlight.poll();
+    if (next == null) {
+      return false;
+    }
+    try {
+      segment = next.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while downloading file " + fileId);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException)e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+    position = 0;
+    segmentsFetched++;
+    fillWindow();
+    return true;
+  }
+
+  private void fillWindow() {
+    while (inFlight.size() < parallelism && nextSegmentStart < size) {
+      long start = nextSegmentStart;
+      long end = Math.min(start + segmentSize, size) - 1;
+      inFlight.add(SEGMENT_FETCHERS.submit(() -> fetchSegment(start, end)));
+      nextSegmentStart = end + 1;
+    }
+  }
+
+  private byte[] fetchSegment(long start, long end) throws IOException, InterruptedException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Drive.Files.Get request = drive.files().get(fileId);
+        request.getRequestHeaders().setRange("bytes=" + start + "-" + end);
+        HttpResponse response = request.executeMedia();
+        try {
+          if (response.getStatusCode() != PARTIAL_CONTENT) {
+            throw new IOException("Google did not return the requested range of file " + fileId);
+          }
+          byte[] data = new byte[(int)(end - start + 1)];
+          try (InputStream content = response.getContent()) {
+            ByteStreams.readFully(content, data);
+          }
+          return data;
+        } finally {
+          response.disconnect();
+        }
+      } catch (GoogleJsonResponseException e) {
+        //Errors such as a missing file or an expired token will not go away by asking again
+        if ((e.getStatusCode() < 500 && e.getStatusCode() != 429) || attempt == MAX_SEGMENT_ATTEMPTS) {
+          throw e;
+        }
+      } catch (IOException e) {
+        if (attempt == MAX_SEGMENT_ATTEMPTS) {
+          throw e;
+        }
+      }
+      segmentRetries.incrementAndGet();
+      TimeUnit.MILLISECONDS.sleep(RETRY_DELAY_MS * attempt);
+    }
+  }
+}
@@ -2,25 +2,25 @@ package com.mycorp.apikey.templates;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.util.HashMap;
-import java.util.Map;
-
-import org.apache.http.HttpEntity;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.util.EntityUtils;
 
 import com.appian.connectedsystems.simplified.sdk.configuration.SimpleConfiguration;
 import com.appian.connectedsystems.simplified.sdk.connectiontesting.SimpleTestableConnectedSystemTemplate;
 import com.appian.connectedsystems.templateframework.sdk.ExecutionContext;
 import com.appian.connectedsystems.templateframework.sdk.TemplateId;
 import com.appian.connectedsystems.templateframework.sdk.connectiontesting.TestConnectionResult;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 @TemplateId(name="APIKeyConnectedSystemTemplate")
 public class APIKeyConnectedSystemTemplate extends SimpleTestableConnectedSystemTemplate {
 
   static String API_KEY = "apiKey";
+  static final String CONNECT_TIMEOUT_KEY = "connectTimeout";
+  static final String SOCKET_TIMEOUT_KEY = "socketTimeout";
+  static final String CACHE_TTL_KEY = "cacheTtlSeconds";
+  static final String DIAGNOSTICS_LEVEL_KEY = "diagnosticsLevel";
+  static final String RAW_RESPONSE_LIMIT_KEY = "rawResponseLimit";
+  static final String RATE_LIMIT_KEY = "rateLimit";
+  static final String RATE_LIMIT_BURST_KEY = "rateLimitBurst";
+  static final String RATE_LIMIT_MAX_WAIT_KEY = "rateLimitMaxWait";
 
   @Override
   protected SimpleConfiguration getConfiguration(
@@ -30,6 +30,45 @@ public class APIKeyConnectedSystemTemplate extends SimpleTestableConnectedSystem
         encryptedTextProperty(API_KEY)
         .label("API Key")
         .instructionText("See https://developers.google.com/places/web-service/get-api-key for instructions to generate a Google API Key")
+        .build(),
+        // Connections to Google are pooled and shared by all integrations using this connected system.
+        // These timeouts apply to that shared pool
+        integerProperty(CONNECT_TIMEOUT_KEY)
+        .label("Connect Timeout (ms)")
+        .instructionText("Defaults to " + PlacesConnectionPool.DEFAULT_CONNECT_TIMEOUT_MS + " ms if left blank")
+        .build(),
+        integerProperty(SOCKET_TIMEOUT_KEY)
+        .label("Socket Timeout (ms)")
+        .instructionText("Defaults to " + PlacesConnectionPool.DEFAULT_SOCKET_TIMEOUT_MS + " ms if left blank")
+        .build(),
+        integerProperty(CACHE_TTL_KEY)
+        .label("Search Cache TTL (seconds)")
+        .instructionText("How long successful searches are reused before asking Google again. Defaults to " +
+            PlacesResponseCache.DEFAULT_TTL_SECONDS + " seconds if left blank, 0 turns the cache off")
+        .build(),
+        textProperty(DIAGNOSTICS_LEVEL_KEY)
+        .label("Diagnostics Level")
+        .choices(DiagnosticsLevel.choices())
+        .instructionText("Information shown on the Request and Response tabs when testing integrations. Defaults to Full")
+        .build(),
+        integerProperty(RAW_RESPONSE_LIMIT_KEY)
+        .label("Raw Response Limit (bytes)")
+        .instructionText("Longer responses are truncated in Full diagnostics. Defaults to " +
+            DiagnosticsLevel.DEFAULT_RAW_RESPONSE_LIMIT_BYTES + " bytes if left blank")
+        .build(),
+        // The rate limit is enforced on each node, so on a cluster it should be that node's share of the quota
+        integerProperty(RATE_LIMIT_KEY)
+        .label("Rate Limit (requests/second)")
+        .instructionText("Searches sent to Google per second with this API key. No limit if left blank")
+        .build(),
+        integerProperty(RATE_LIMIT_BURST_KEY)
+        .label("Rate Limit Burst")
+        .instructionText("Searches that may be sent at once after a quiet period. Defaults to the rate limit if left blank")
+        .build(),
+        integerProperty(RATE_LIMIT_MAX_WAIT_KEY)
+        .label("Rate Limit Max Wait (ms)")
+        .instructionText("Searches that would wait longer than this for the rate limit fail instead. Defaults to " +
+            RequestRateLimiter.DEFAULT_MAX_WAIT_MS + " ms if left blank")
         .build()
     );
   }
@@ -38,31 +77,17 @@ public class APIKeyConnectedSystemTemplate extends SimpleTestableConnectedSystem
   protected TestConnectionResult testConnection(
       SimpleConfiguration simpleConfiguration, ExecutionContext executionContext) {
     String apiKey = simpleConfiguration.getValue(API_KEY);
-    try (PlacesClient client = new PlacesClient()) {
-      //Execute simple call to Google Places API
-      CloseableHttpResponse response = client.execute(apiKey, "", false);
-
-      //Read entity directly to json string
-      HttpEntity entity = response.getEntity();
-      String jsonResponse = EntityUtils.toString(entity);
-      EntityUtils.consume(entity);
+    try {
+      //Execute a lightweight probe against Google Places API, or reuse the result of a recent one
+      PlacesConnectionProbe.Result result = PlacesConnectionProbe.test(simpleConfiguration, apiKey);
 
-      Map<String, Object> responseMap = getResponseMap(jsonResponse);
       //Determine if Google returned an error
-      if (response.getStatusLine().getStatusCode() != 200 || responseMap.containsKey(("error_message"))) {
-        String errorMessage = (String)responseMap.get("error_message");
-        return TestConnectionResult.error(errorMessage);
+      if (!result.isSuccess()) {
+        return TestConnectionResult.error(result.getErrorMessage());
       }
       return TestConnectionResult.success();
     } catch (IOException | URISyntaxException e) {
       return TestConnectionResult.error("Something went wrong: " + e.getMessage());
     }
   }
-
-  //Deserialize JSON to Java Map
-  private Map<String,Object> getResponseMap(String jsonResponse) throws IOException {
-    ObjectMapper objectMapper = new ObjectMapper();
-    Map<String,Object> responseMap = objectMapper.readValue(jsonResponse, new TypeReference<HashMap<String,Object>>() {});
-    return responseMap;
-  }
 }
@@ -0,0 +1,55 @@
+package com.mycorp.apikey.templates;
+
+import java.util.Arrays;
+
+import com.appian.connectedsystems.simplified.sdk.configuration.SimpleConfiguration;
+import com.appian.connectedsystems.templateframework.sdk.ExecutionContext;
+import com.appian.connectedsystems.templateframework.sdk.configuration.Choice;
+
+/**
+ * How much diagnostic information the Places integrations collect, chosen on the connected system.
+ */
+enum DiagnosticsLevel {
+  //No diagnostics are built
+  OFF("Off"),
+  //Request details, status and sizes, but not the response body
+  SUMMARY("Summary"),
+  //Everything in SUMMARY plus the raw response, up to the configured number of bytes
+  FULL("Full");
+
+  static final int DEFAULT_RAW_RESPONSE_LIMIT_BYTES = 64 * 1024;
+
+  private final String label;
+
+  DiagnosticsLevel(String label) {
+    this.label = label;
+  }
+
+  /**
+   * Diagnostics are only shown in the integration designer, so nothing is collected for executions that run
+   * anywhere else, such as in a process, whatever level is configured.
+   */
+  static DiagnosticsLevel of(SimpleConfiguration connectedSystemConfiguration, ExecutionContext executionContext) {
+    if (!executionContext.isDiagnosticsEnabled()) {
+      return OFF;
+    }
+    String value = connectedSystemConfiguration.getValue(APIKeyConnectedSystemTemplate.DIAGNOSTICS_LEVEL_KEY);
+    for (DiagnosticsLevel level : values()) {
+      if (level.name().equals(value)) {
+        return level;
+      }
+    }
+    return FULL;
+  }
+
+  static int rawResponseLimit(SimpleConfiguration connectedSystemConfiguration) {
+    Integer limit = connectedSystemConfiguration.getValue(APIKeyConnectedSystemTemplate.RAW_RESPONSE_LIMIT_KEY);
+    return limit == null || limit <= 0 ? DEFAULT_RAW_RESPONSE_LIMIT_BYTES : limit;
+  }
+
+  static Choice[] choices() {
+    return Arrays.stream(values())
+        .map(level -> Choice.builder().name(level.label).value(level.name()).build())
+        .toArray(Choice[]::new);
+  }
+}
@@ -7,10 +7,6 @@ import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.utils.HttpClientUtils;
-import org.apache.http.util.EntityUtils;
-
 import com.appian.connectedsystems.simplified.sdk.SimpleIntegrationTemplate;
 import com.appian.connectedsystems.simplified.sdk.configuration.SimpleConfiguration;
 import com.appian.connectedsystems.templateframework.sdk.ExecutionContext;
@@ -21,8 +17,6 @@ import com.appian.connectedsystems.templateframework.sdk.configuration.PropertyP
 import com.appian.connectedsystems.templateframework.sdk.diagnostics.IntegrationDesignerDiagnostic;
 import com.appian.connectedsystems.templateframework.sdk.metadata.IntegrationTemplateRequestPolicy;
 import com.appian.connectedsystems.templateframework.sdk.metadata.IntegrationTemplateType;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 // Must provide an integration id. This value need only be unique for this connected system
 @TemplateId(name="LocationSearchIntegrationTemplate")
 // Set template type to READ since this integration does not have side effects
@@ -64,53 +58,76 @@ public class LocationSearchIntegrationTemplate extends SimpleIntegrationTemplate
     String searchTerm = integrationConfiguration.getValue("searchField");
     Boolean phoneToggle = integrationConfiguration.getValue("phoneToggle");
 
+    //Only capture as much of the body as the diagnostics will show
+    DiagnosticsLevel diagnosticsLevel = DiagnosticsLevel.of(connectedSystemConfiguration, executionContext);
+    int rawResponseLimit = DiagnosticsLevel.rawResponseLimit(connectedSystemConfiguration);
+    int captureLimit = diagnosticsLevel == DiagnosticsLevel.FULL ? rawResponseLimit : 0;
+
     IntegrationResponse.Builder integrationResponseBuilder;
-    CloseableHttpResponse httpResponse = null;
-    try (PlacesClient client = new PlacesClient()){
+    PlacesClient client = new PlacesClient(connectedSystemConfiguration);
+    try {
       //The amount of time it takes to interact with the external
       // system will be displayed to the end user
       long startTime = System.currentTimeMillis();
-      //Execute call to Google Places API
-      httpResponse = client.execute(apiKey, searchTerm, phoneToggle);
+      //Execute call to Google Places API, unless the same search was answered recently
+      PlacesResponseCache.Lookup lookup = PlacesResponseCache.get(connectedSystemConfiguration, apiKey,
+          searchTerm, phoneToggle, () -> client.search(apiKey, searchTerm, phoneToggle, captureLimit));
       long endTime = System.currentTimeMillis();
       long executionTime = endTime - startTime;
 
-      String jsonResponse = EntityUtils.toString(httpResponse.getEntity());
+      PlacesResponse placesResponse = lookup.getResponse();
 
       //Determine if call was successful
-      if (httpResponse.getStatusLine().getStatusCode() == 200) {
-        Map<String,Object> responseMap = getResponseMap(jsonResponse);
+      if (placesResponse.getStatusCode() == 200) {
+        PlacesSearchResult searchResult = placesResponse.getResult();
         //Google will send a 200 even if execution resulted in what is considered an error by this template
-        if (responseMap.containsKey("error_message")) {
-          IntegrationError error = googleReturnedError(responseMap);
+        if (searchResult.getErrorMessage() != null) {
+          IntegrationError error = googleReturnedError(searchResult);
           //Builds response for error case. Status code may not always correspond to success or failure
           integrationResponseBuilder = IntegrationResponse.forError(error);
         } else {
           //Builds response for success case
-          integrationResponseBuilder = IntegrationResponse.forSuccess(responseMap);
+          integrationResponseBuilder = IntegrationResponse.forSuccess(searchResult.toResultMap());
         }
       } else {
         //Builds response for error case
-        IntegrationError error = httpResponseError(httpResponse);
+        IntegrationError error = httpResponseError(placesResponse.getStatusCode());
         integrationResponseBuilder = IntegrationResponse.forError(error);
       }
 
+      if (diagnosticsLevel == DiagnosticsLevel.OFF) {
+        return integrationResponseBuilder.build();
+      }
       //Gets request and response information to display to help user diagnose problems with the integration
       Map<String,Object> requestDiagnostic = getRequestDiagnostic(apiKey, searchTerm, phoneToggle);
-      Map<String,Object> responseDiagnostic = getResponseDiagnostic(jsonResponse);
+      Map<String,Object> responseDiagnostic = getResponseDiagnostic(placesResponse, diagnosticsLevel,
+          rawResponseLimit);
+      responseDiagnostic.putAll(lookup.getDiagnostics());
+      responseDiagnostic.putAll(client.getResilienceDiagnostics());
       IntegrationDesignerDiagnostic integrationDesignerDiagnostic = IntegrationDesignerDiagnostic.builder()
           .addRequestDiagnostic(requestDiagnostic)
           .addResponseDiagnostic(responseDiagnostic)
           .addExecutionTimeDiagnostic(executionTime)
           .build();
       return integrationResponseBuilder.withDiagnostic(integrationDesignerDiagnostic).build();
+    } catch (ResilientRequestExecutor.CircuitOpenException e) {
+      //Places has been failing, so the search was not sent at all
+      IntegrationError error = IntegrationError.builder()
+          .title("Google Places is unavailable")
+          .message(e.getMessage())
+          .build();
+      return IntegrationResponse.forError(error).build();
+    } catch (RequestRateLimiter.RateLimitExceededException e) {
+      //The search was not sent, Google would have rejected it for being over quota
+      IntegrationError error = IntegrationError.builder()
+          .title("Rate limit exceeded")
+          .message(e.getMessage())
+          .build();
+      return IntegrationResponse.forError(error).build();
     } catch (URISyntaxException | IOException e) {
       //Builds default response for unknown error case
       IntegrationError error = templateError();
       return IntegrationResponse.forError(error).build();
-    } finally {
-      //Closes Http Response
-      HttpClientUtils.closeQuietly(httpResponse);
     }
   }
 
@@ -123,23 +140,36 @@ public class LocationSearchIntegrationTemplate extends SimpleIntegrationTemplate
     return diagnostic;
   }
 
-  private Map<String, Object> getResponseDiagnostic(String jsonString) {
+  private Map<String, Object> getResponseDiagnostic(
+      PlacesResponse placesResponse,
+      DiagnosticsLevel diagnosticsLevel,
+      int rawResponseLimit) {
     Map<String, Object> diagnostic = new HashMap<>();
-    diagnostic.put("Raw Response", jsonString);
+    diagnostic.put("Status Code", placesResponse.getStatusCode());
+    diagnostic.put("Response Size (bytes)", placesResponse.getSize());
+    if (placesResponse.getResult() != null) {
+      diagnostic.put("Status", placesResponse.getResult().getStatus());
+      diagnostic.put("Number of Candidates", placesResponse.getResult().getCandidates().size());
+    }
+    if (diagnosticsLevel == DiagnosticsLevel.FULL) {
+      String rawResponse = placesResponse.getRawBody(rawResponseLimit);
+      //A cached response may have been read by an execution that did not keep the body
+      diagnostic.put("Raw Response", rawResponse != null ? rawResponse : "Not kept for this cached response");
+    }
     return diagnostic;
   }
 
-  private IntegrationError googleReturnedError(Map<String,Object> responseMap) {
+  private IntegrationError googleReturnedError(PlacesSearchResult searchResult) {
     return IntegrationError.builder()
         .title("Error with search")
-        .message((String)responseMap.get("error_message"))
+        .message(searchResult.getErrorMessage())
         .build();
   }
 
-  private IntegrationError httpResponseError(CloseableHttpResponse httpResponse) {
+  private IntegrationError httpResponseError(int statusCode) {
     return IntegrationError.builder()
         .title("Received an error Response")
-        .message("Status Code: " + httpResponse.getStatusLine().getStatusCode())
+        .message("Status Code: " + statusCode)
         .build();
   }
 
@@ -149,12 +179,4 @@ public class LocationSearchIntegrationTemplate extends SimpleIntegrationTemplate
         .message("An error occurred in the IntegrationTemplate")
         .build();
   }
-
-  private Map<String,Object> getResponseMap(String jsonResponse) throws IOException {
-    ObjectMapper objectMapper = new ObjectMapper();
-    Map<String,Object> responseMap = objectMapper.readValue(jsonResponse,
-        new TypeReference<HashMap<String,Object>>() {
-        });
-    return responseMap;
-  }
 }
@@ -1,40 +1,105 @@
 package com.mycorp.apikey.templates;
 
-import static org.apache.http.impl.client.HttpClients.createDefault;
-
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Map;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.utils.HttpClientUtils;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+
+import com.appian.connectedsystems.simplified.sdk.configuration.SimpleConfiguration;
 
-public class PlacesClient implements AutoCloseable {
+public class PlacesClient {
 
   private final CloseableHttpClient client;
+  //Retries and breaker state of the searches sent by this client, see getResilienceDiagnostics
+  private final ResilientRequestExecutor executor = new ResilientRequestExecutor();
+  private final Integer rateLimit;
+  private final Integer rateLimitBurst;
+  private final Integer rateLimitMaxWaitMs;
+  private long rateLimitWaitMs;
   public static final String BASE_URL = "https://maps.googleapis.com/maps/api/place/findplacefromtext/json";
+  private static final String SEARCH_FIELDS = "formatted_address,name,rating,opening_hours";
 
-  PlacesClient() {
-    client = createDefault();
+  //The underlying HttpClient is shared by every integration on the connected system, so it is not closed here
+  PlacesClient(SimpleConfiguration connectedSystemConfiguration) {
+    client = PlacesConnectionPool.getClient(connectedSystemConfiguration);
+    rateLimit = connectedSystemConfiguration.getValue(APIKeyConnectedSystemTemplate.RATE_LIMIT_KEY);
+    rateLimitBurst = connectedSystemConfiguration.getValue(APIKeyConnectedSystemTemplate.RATE_LIMIT_BURST_KEY);
+    rateLimitMaxWaitMs = connectedSystemConfiguration.getValue(APIKeyConnectedSystemTemplate.RATE_LIMIT_MAX_WAIT_KEY);
   }
 
+  /**
+   * Callers must fully consume the response entity (or close the response) so that the connection is
+   * handed back to the pool.
+   *
+   * @throws RequestRateLimiter.RateLimitExceededException if the key is over the rate configured on the
+   * connected system and the call, or one of its retries, cannot wait long enough for its turn
+   */
   public CloseableHttpResponse execute(String apiKey, String searchTerm, Boolean phoneToggle)
       throws IOException, URISyntaxException {
-    HttpGet getRequest = new HttpGet();
-    try {
-      String inputType = getInputType(phoneToggle);
-      URI uri = constructRequest(apiKey, searchTerm, inputType);
-      getRequest.setURI(uri);
-      return client.execute(getRequest);
-    } finally {
-      getRequest.releaseConnection();
+    String inputType = getInputType(phoneToggle);
+    URI uri = constructRequest(apiKey, searchTerm, inputType, SEARCH_FIELDS);
+    RequestRateLimiter rateLimiter = RequestRateLimiter.get(PlacesResponseCache.fingerprint(apiKey), rateLimit,
+        rateLimitBurst);
+    //Every attempt takes its own permit, so retries cannot push the key over its rate
+    return executor.execute(client, new HttpGet(uri),
+        () -> rateLimitWaitMs += rateLimiter.acquire(rateLimitMaxWaitMs));
+  }
+
+  /**
+   * Runs the search and parses the response as it arrives, handing the connection back to the pool. Up to
+   * {@code captureLimit} bytes of the body are kept for the diagnostics, 0 keeps none.
+   */
+  PlacesResponse search(String apiKey, String searchTerm, Boolean phoneToggle, int captureLimit)
+      throws IOException, URISyntaxException {
+    return read(execute(apiKey, searchTerm, phoneToggle), captureLimit);
+  }
+
+  /**
+   * Checks that Google accepts the API key with the cheapest request Places offers: a find place request
+   * that asks for nothing but the place id, which Google does not bill for. The probe is sent once, without
+   * retries, so that the test reports what Google answers right now.
+   */
+  PlacesResponse probe(String apiKey) throws IOException, URISyntaxException {
+    URI uri = constructRequest(apiKey, "", getInputType(false), "place_id");
+    return read(client.execute(new HttpGet(uri)), 0);
+  }
+
+  //Retries, breaker state and time spent waiting for the rate limit
+  Map<String,Object> getResilienceDiagnostics() {
+    Map<String,Object> diagnostics = executor.getDiagnostics();
+    diagnostics.put("Rate Limit Wait (ms)", rateLimitWaitMs);
+    return diagnostics;
+  }
+
+  private static PlacesResponse read(CloseableHttpResponse httpResponse, int captureLimit) throws IOException {
+    try (CloseableHttpResponse response = httpResponse) {
+      int statusCode = response.getStatusLine().getStatusCode();
+      HttpEntity entity = response.getEntity();
+      CapturingInputStream content = new CapturingInputStream(entity.getContent(), captureLimit);
+      //Error bodies are not necessarily JSON, they are only read for the diagnostics
+      PlacesSearchResult result = statusCode == 200 ? PlacesResponseReader.read(content) : null;
+      //Reads whatever the parser left unread, so the size is known and the connection can be reused
+      byte[] buffer = new byte[4096];
+      while (content.read(buffer) != -1) {
+        //Counted and captured by the stream
+      }
+      EntityUtils.consume(entity);
+      return new PlacesResponse(statusCode, result, captureLimit > 0 ? content.getCaptured() : null,
+          content.getBytesRead());
     }
   }
 
-  private String getInputType(Boolean toggle) {
+  static String getInputType(Boolean toggle) {
     if (toggle != null && toggle) {
       return "phonenumber";
     } else {
@@ -42,19 +107,58 @@ public class PlacesClient implements AutoCloseable {
     }
   }
 
-  private URI constructRequest(String apiKey, String searchTerm, String inputType)
+  private URI constructRequest(String apiKey, String searchTerm, String inputType, String fields)
       throws URISyntaxException {
     return new URIBuilder(BASE_URL)
         .addParameter("input", searchTerm)
         .addParameter("inputtype", inputType)
-        .addParameter("fields", "formatted_address,name,rating,opening_hours")
+        .addParameter("fields", fields)
         .addParameter("key", apiKey)
         .addParameter("locationbias", "ipbias")
         .build();
   }
 
-  @Override
-  public void close() {
-    HttpClientUtils.closeQuietly(client);
+  //Counts the bytes read by the parser and keeps a copy of the first ones for the Raw Response diagnostic
+  private static final class CapturingInputStream extends FilterInputStream {
+    private final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+    private final int captureLimit;
+    private long bytesRead;
+
+    private CapturingInputStream(InputStream in, int captureLimit) {
+      super(in);
+      this.captureLimit = captureLimit;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b != -1) {
+        if (bytesRead < captureLimit) {
+          captured.write(b);
+        }
+        bytesRead++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int count = super.read(buffer, offset, length);
+      if (count > 0) {
+        if (bytesRead < captureLimit) {
+          captured.write(buffer, offset, (int)Math.min(count, captureLimit - bytesRead));
+        }
+        bytesRead += count;
+      }
+      return count;
+    }
+
+    private byte[] getCaptured() {
+      return captured.toByteArray();
+    }
+
+    private long getBytesRead() {
+      return bytesRead;
+    }
   }
 }
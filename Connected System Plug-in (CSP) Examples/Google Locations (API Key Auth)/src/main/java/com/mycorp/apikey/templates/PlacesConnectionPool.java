@@ -0,0 +1,115 @@
+package com.mycorp.apikey.templates;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import com.appian.connectedsystems.simplified.sdk.configuration.SimpleConfiguration;
+
+/**
+ * Holds the pooled HTTP clients shared by every template in this plug-in.
+ *
+ * Creating a new HttpClient for each call means a new socket and a new TLS handshake for every
+ * location search. Instead, one client backed by a {@link PoolingHttpClientConnectionManager} is kept
+ * per distinct connection setting of the connected system, so all integrations that use the same
+ * connected system reuse open connections to Google.
+ */
+final class PlacesConnectionPool {
+
+  static final int DEFAULT_CONNECT_TIMEOUT_MS = 5_000;
+  static final int DEFAULT_SOCKET_TIMEOUT_MS = 10_000;
+
+  // All requests go to a single route (maps.googleapis.com), so the per route limit is what matters
+  private static final int MAX_TOTAL_CONNECTIONS = 50;
+  private static final int MAX_CONNECTIONS_PER_ROUTE = 20;
+  // Used when Google does not send a Keep-Alive header
+  private static final long DEFAULT_KEEP_ALIVE_MS = TimeUnit.SECONDS.toMillis(30);
+  private static final long MAX_IDLE_SECONDS = 30;
+  // Re-check pooled connections that have been idle for this long before leasing them again
+  private static final int VALIDATE_AFTER_INACTIVITY_MS = 2_000;
+
+  private static final ConnectionKeepAliveStrategy KEEP_ALIVE_STRATEGY = (response, context) -> {
+    long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+    return keepAlive > 0 ? keepAlive : DEFAULT_KEEP_ALIVE_MS;
+  };
+
+  private static final ConcurrentMap<Settings,CloseableHttpClient> CLIENTS = new ConcurrentHashMap<>();
+
+  private PlacesConnectionPool() {
+  }
+
+  /**
+   * Returns the shared client for the timeouts configured on the connected system. The client must not
+   * be closed by callers; connections are returned to the pool once a response entity is fully consumed.
+   */
+  static CloseableHttpClient getClient(SimpleConfiguration connectedSystemConfiguration) {
+    Settings settings = new Settings(
+        valueOrDefault(connectedSystemConfiguration.getValue(APIKeyConnectedSystemTemplate.CONNECT_TIMEOUT_KEY),
+            DEFAULT_CONNECT_TIMEOUT_MS),
+        valueOrDefault(connectedSystemConfiguration.getValue(APIKeyConnectedSystemTemplate.SOCKET_TIMEOUT_KEY),
+            DEFAULT_SOCKET_TIMEOUT_MS));
+    return CLIENTS.computeIfAbsent(settings, PlacesConnectionPool::createClient);
+  }
+
+  private static CloseableHttpClient createClient(Settings settings) {
+    PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(MAX_TOTAL_CONNECTIONS);
+    connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+    connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MS);
+
+    RequestConfig requestConfig = RequestConfig.custom()
+        .setConnectTimeout(settings.connectTimeoutMs)
+        .setConnectionRequestTimeout(settings.connectTimeoutMs)
+        .setSocketTimeout(settings.socketTimeoutMs)
+        .build();
+
+    return HttpClients.custom()
+        .setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(requestConfig)
+        .setKeepAliveStrategy(KEEP_ALIVE_STRATEGY)
+        //Starts a background thread that closes expired and idle connections so that stale sockets are
+        // not handed out after Google has closed them on its side
+        .evictExpiredConnections()
+        .evictIdleConnections(MAX_IDLE_SECONDS, TimeUnit.SECONDS)
+        .build();
+  }
+
+  private static int valueOrDefault(Integer value, int defaultValue) {
+    return value == null || value <= 0 ? defaultValue : value;
+  }
+
+  private static final class Settings {
+    private final int connectTimeoutMs;
+    private final int socketTimeoutMs;
+
+    private Settings(int connectTimeoutMs, int socketTimeoutMs) {
+      this.connectTimeoutMs = connectTimeoutMs;
+      this.socketTimeoutMs = socketTimeoutMs;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Settings)) {
+        return false;
+      }
+      Settings that = (Settings)o;
+      return connectTimeoutMs == that.connectTimeoutMs && socketTimeoutMs == that.socketTimeoutMs;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(connectTimeoutMs, socketTimeoutMs);
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package com.mycorp.apikey.templates;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.appian.connectedsystems.simplified.sdk.configuration.SimpleConfiguration;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Runs the connection test for the connected system.
+ *
+ * Designers often click Test several times in a row, so the outcome Google gave for a key is remembered for
+ * a short time and returned again without another request. Results are keyed by a fingerprint of the key,
+ * never the key itself. Only answers from Google are remembered; a network failure is tried again on the
+ * next click.
+ */
+final class PlacesConnectionProbe {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PlacesConnectionProbe.class);
+
+  private static final long RESULT_TTL_SECONDS = 60;
+
+  private static final Cache<String,Result> RESULTS = Caffeine.newBuilder()
+      .maximumSize(1_000)
+      .expireAfterWrite(RESULT_TTL_SECONDS, TimeUnit.SECONDS)
+      .build();
+
+  private PlacesConnectionProbe() {
+  }
+
+  static Result test(SimpleConfiguration connectedSystemConfiguration, String apiKey)
+      throws IOException, URISyntaxException {
+    String fingerprint = PlacesResponseCache.fingerprint(apiKey);
+    Result cached = RESULTS.getIfPresent(fingerprint);
+    if (cached != null) {
+      return cached;
+    }
+
+    long startTime = System.nanoTime();
+    PlacesResponse response = new PlacesClient(connectedSystemConfiguration).probe(apiKey);
+    long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    //Logged so that connectivity regressions show up in the application server log
+    LOG.info("Google Places connection probe for key {} returned status {} in {} ms",
+        fingerprint.substring(0, 8), response.getStatusCode(), latencyMs);
+
+    Result result;
+    if (response.getStatusCode() != 200) {
+      result = new Result("Status Code: " + response.getStatusCode());
+    } else {
+      result = new Result(response.getResult().getErrorMessage());
+    }
+    RESULTS.put(fingerprint, result);
+    return result;
+  }
+
+  static final class Result {
+    private final String errorMessage;
+
+    private Result(String errorMessage) {
+      this.errorMessage = errorMessage;
+    }
+
+    boolean isSuccess() {
+      return errorMessage == null;
+    }
+
+    String getErrorMessage() {
+      return errorMessage;
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package com.mycorp.apikey.templates;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A fully read response from Google Places. Unlike an HTTP response it holds no connection, so it can be kept
+ * in {@link PlacesResponseCache} and shared between executions.
+ */
+final class PlacesResponse {
+
+  private final int statusCode;
+  private final PlacesSearchResult result;
+  private final byte[] rawBody;
+  private final long size;
+
+  PlacesResponse(int statusCode, PlacesSearchResult result, byte[] rawBody, long size) {
+    this.statusCode = statusCode;
+    this.result = result;
+    this.rawBody = rawBody;
+    this.size = size;
+  }
+
+  int getStatusCode() {
+    return statusCode;
+  }
+
+  /**
+   * The parsed body, only available when Google returned a 200.
+   */
+  PlacesSearchResult getResult() {
+    return result;
+  }
+
+  /**
+   * Size of the body in bytes.
+   */
+  long getSize() {
+    return size;
+  }
+
+  /**
+   * The body as Google sent it, cut after {@code limit} bytes with a marker saying how much was left out.
+   * Returns null if the body was not kept when the response was read.
+   */
+  String getRawBody(int limit) {
+    if (rawBody == null) {
+      return null;
+    }
+    int length = Math.min(rawBody.length, limit);
+    String body = new String(rawBody, 0, length, StandardCharsets.UTF_8);
+    if (length < size) {
+      body += "... [truncated, showing " + length + " of " + size + " bytes]";
+    }
+    return body;
+  }
+}
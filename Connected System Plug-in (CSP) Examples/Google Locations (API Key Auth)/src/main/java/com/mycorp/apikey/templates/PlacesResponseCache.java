@@ -0,0 +1,216 @@
+package com.mycorp.apikey.templates;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.appian.connectedsystems.simplified.sdk.configuration.SimpleConfiguration;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Caches successful location searches. Location Search is a READ integration, so the same search with the
+ * same key returns the same places and there is no need to spend quota asking Google again within the TTL.
+ * Google reports most errors, such as OVER_QUERY_LIMIT or REQUEST_DENIED, with a 200 and an error status in
+ * the body, so only responses whose Places status is OK or ZERO_RESULTS are kept.
+ *
+ * Entries are keyed by a SHA-256 hash of the API key, input type and search term, so neither the key nor the
+ * search term is held in memory. When several executions miss on the same search at the same time only one
+ * of them calls Google; the others wait for and share its response.
+ */
+final class PlacesResponseCache {
+
+  static final int DEFAULT_TTL_SECONDS = 300;
+  private static final int MAX_ENTRIES = 10_000;
+  //Places statuses of answers that will not change by asking again within the TTL
+  private static final Set<String> CACHEABLE_STATUSES = new HashSet<>(Arrays.asList("OK", "ZERO_RESULTS"));
+
+  //One cache per TTL configured on a connected system
+  private static final ConcurrentMap<Integer,Responses> CACHES = new ConcurrentHashMap<>();
+
+  private PlacesResponseCache() {
+  }
+
+  interface Search {
+    PlacesResponse execute() throws IOException, URISyntaxException;
+  }
+
+  /**
+   * Returns the cached response for this search, or runs the search and caches its response if Google
+   * answered it, see {@link #isCacheable}. A TTL of 0 turns the cache off.
+   */
+  static Lookup get(
+      SimpleConfiguration connectedSystemConfiguration,
+      String apiKey,
+      String searchTerm,
+      Boolean phoneToggle,
+      Search search) throws IOException, URISyntaxException {
+    Integer configuredTtl = connectedSystemConfiguration.getValue(APIKeyConnectedSystemTemplate.CACHE_TTL_KEY);
+    int ttlSeconds = configuredTtl == null ? DEFAULT_TTL_SECONDS : configuredTtl;
+    if (ttlSeconds <= 0) {
+      return new Lookup(search.execute(), null, null);
+    }
+
+    Responses responses = CACHES.computeIfAbsent(ttlSeconds, Responses::new);
+    Cache<String,PlacesResponse> cache = responses.cache;
+    String key = fingerprint(apiKey, PlacesClient.getInputType(phoneToggle), searchTerm);
+    PlacesResponse response = cache.asMap().get(key);
+    if (response != null) {
+      return responses.record(response, Source.HIT);
+    }
+    boolean[] loaded = new boolean[1];
+    try {
+      response = cache.get(key, ignored -> {
+        loaded[0] = true;
+        try {
+          return search.execute();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        } catch (URISyntaxException e) {
+          throw new IllegalArgumentException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } catch (IllegalArgumentException e) {
+      if (e.getCause() instanceof URISyntaxException) {
+        throw (URISyntaxException)e.getCause();
+      }
+      throw e;
+    }
+    if (!isCacheable(response)) {
+      //Errors are handed to the executions that were waiting for them, but are not kept
+      cache.asMap().remove(key, response);
+    }
+    //An execution that did not load the response waited for one that was loading it at the same time
+    return responses.record(response, loaded[0] ? Source.MISS : Source.COALESCED);
+  }
+
+  private static boolean isCacheable(PlacesResponse response) {
+    return response.getStatusCode() == 200 && response.getResult() != null &&
+        CACHEABLE_STATUSES.contains(response.getResult().getStatus());
+  }
+
+
+  /**
+   * SHA-256 hash of the given values, used so that API keys and search terms are never kept as cache keys.
+   */
+  static String fingerprint(String... values) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      for (String value : values) {
+        if (value != null) {
+          digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        //Separator so that ("ab", "c") and ("a", "bc") do not collide
+        digest.update((byte)0);
+      }
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest.digest()) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is always available", e);
+    }
+  }
+
+  /**
+   * The responses cached for one TTL, along with how lookups were answered. Caffeine would count a lookup
+   * that waited for another one's load as a hit, so hits, misses and coalesced lookups are counted here and
+   * only evictions come from Caffeine's statistics.
+   */
+  private static final class Responses {
+    private final Cache<String,PlacesResponse> cache;
+    private final Map<Source,LongAdder> counts = new EnumMap<>(Source.class);
+
+    private Responses(int ttlSeconds) {
+      //Caffeine evicts with W-TinyLFU, which keeps frequently searched terms even when a burst of one-off
+      // searches passes through the cache
+      cache = Caffeine.newBuilder()
+          .maximumSize(MAX_ENTRIES)
+          .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+          .recordStats()
+          .build();
+      for (Source source : Source.values()) {
+        counts.put(source, new LongAdder());
+      }
+    }
+
+    private Lookup record(PlacesResponse response, Source source) {
+      counts.get(source).increment();
+      return new Lookup(response, source, this);
+    }
+  }
+
+  /**
+   * Where the response of a lookup came from
+   */
+  enum Source {
+    //Already in the cache
+    HIT("Hit"),
+    //Loaded from Google by this lookup
+    MISS("Miss"),
+    //Loaded from Google by another lookup of the same search that was running at the same time
+    COALESCED("Coalesced");
+
+    private final String label;
+
+    Source(String label) {
+      this.label = label;
+    }
+  }
+
+  /**
+   * The response for a search along with where it came from.
+   */
+  static final class Lookup {
+    private final PlacesResponse response;
+    private final Source source;
+    private final Responses responses;
+
+    private Lookup(PlacesResponse response, Source source, Responses responses) {
+      this.response = response;
+      this.source = source;
+      this.responses = responses;
+    }
+
+    PlacesResponse getResponse() {
+      return response;
+    }
+
+    /**
+     * Null when the cache is off
+     */
+    Source getSource() {
+      return source;
+    }
+
+    Map<String,Object> getDiagnostics() {
+      Map<String,Object> diagnostics = new HashMap<>();
+      if (responses == null) {
+        diagnostics.put("Cache", "Off");
+        return diagnostics;
+      }
+      diagnostics.put("Cache", source.label);
+      diagnostics.put("Cache Hits", responses.counts.get(Source.HIT).sum());
+      diagnostics.put("Cache Misses", responses.counts.get(Source.MISS).sum());
+      diagnostics.put("Cache Coalesced", responses.counts.get(Source.COALESCED).sum());
+      diagnostics.put("Cache Evictions", responses.cache.stats().evictionCount());
+      return diagnostics;
+    }
+  }
+}
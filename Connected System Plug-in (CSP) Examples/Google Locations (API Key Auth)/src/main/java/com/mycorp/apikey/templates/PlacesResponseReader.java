@@ -0,0 +1,98 @@
+package com.mycorp.apikey.templates;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Reads Places responses straight from the HTTP entity stream with Jackson's streaming parser.
+ *
+ * Only candidates, status and error_message are extracted, into a {@link PlacesSearchResult}. The body is
+ * never turned into a String or a tree of maps, and any field the templates do not use is skipped without
+ * being materialized.
+ */
+final class PlacesResponseReader {
+
+  //JsonFactory is thread-safe and caches symbol tables between parsers, so one instance is shared
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private PlacesResponseReader() {
+  }
+
+  static PlacesSearchResult read(InputStream inputStream) throws IOException {
+    JsonParser parser = JSON_FACTORY.createJsonParser(inputStream);
+    try {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Expected a JSON object from Google Places");
+      }
+      String status = null;
+      String errorMessage = null;
+      List<PlacesSearchResult.Candidate> candidates = new ArrayList<>();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+        if ("status".equals(field)) {
+          status = textOrNull(parser, value);
+        } else if ("error_message".equals(field)) {
+          errorMessage = textOrNull(parser, value);
+        } else if ("candidates".equals(field) && value == JsonToken.START_ARRAY) {
+          while (parser.nextToken() == JsonToken.START_OBJECT) {
+            candidates.add(readCandidate(parser));
+          }
+        } else {
+          parser.skipChildren();
+        }
+      }
+      return new PlacesSearchResult(status, errorMessage, candidates);
+    } finally {
+      parser.close();
+    }
+  }
+
+  private static PlacesSearchResult.Candidate readCandidate(JsonParser parser) throws IOException {
+    String name = null;
+    String formattedAddress = null;
+    Double rating = null;
+    Boolean openNow = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      if ("name".equals(field)) {
+        name = textOrNull(parser, value);
+      } else if ("formatted_address".equals(field)) {
+        formattedAddress = textOrNull(parser, value);
+      } else if ("rating".equals(field) && value.isNumeric()) {
+        rating = parser.getDoubleValue();
+      } else if ("opening_hours".equals(field) && value == JsonToken.START_OBJECT) {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          JsonToken hoursValue = parser.nextToken();
+          if ("open_now".equals(parser.getCurrentName()) &&
+              (hoursValue == JsonToken.VALUE_TRUE || hoursValue == JsonToken.VALUE_FALSE)) {
+            openNow = hoursValue == JsonToken.VALUE_TRUE;
+          } else {
+            parser.skipChildren();
+          }
+        }
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return new PlacesSearchResult.Candidate(name, formattedAddress, rating, openNow);
+  }
+
+  private static String textOrNull(JsonParser parser, JsonToken value) throws IOException {
+    if (value == JsonToken.VALUE_NULL) {
+      return null;
+    }
+    if (value.isScalarValue()) {
+      return parser.getText();
+    }
+    parser.skipChildren();
+    return null;
+  }
+}
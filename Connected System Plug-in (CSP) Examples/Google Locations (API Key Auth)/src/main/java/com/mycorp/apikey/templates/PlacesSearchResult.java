@@ -0,0 +1,79 @@
+package com.mycorp.apikey.templates;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The parts of a Places "find place" response that the templates use. Everything else Google returns is
+ * skipped while parsing, see {@link PlacesResponseReader}.
+ */
+final class PlacesSearchResult {
+
+  private final String status;
+  private final String errorMessage;
+  private final List<Candidate> candidates;
+
+  PlacesSearchResult(String status, String errorMessage, List<Candidate> candidates) {
+    this.status = status;
+    this.errorMessage = errorMessage;
+    this.candidates = candidates;
+  }
+
+  String getStatus() {
+    return status;
+  }
+
+  String getErrorMessage() {
+    return errorMessage;
+  }
+
+  List<Candidate> getCandidates() {
+    return candidates;
+  }
+
+  /**
+   * Builds the integration result, using the same keys as the Google response so existing expressions keep
+   * working.
+   */
+  Map<String,Object> toResultMap() {
+    List<Map<String,Object>> candidateMaps = new ArrayList<>(candidates.size());
+    for (Candidate candidate : candidates) {
+      candidateMaps.add(candidate.toMap());
+    }
+    Map<String,Object> result = new HashMap<>();
+    result.put("candidates", candidateMaps);
+    result.put("status", status);
+    return result;
+  }
+
+  static final class Candidate {
+    private final String name;
+    private final String formattedAddress;
+    private final Double rating;
+    private final Boolean openNow;
+
+    Candidate(String name, String formattedAddress, Double rating, Boolean openNow) {
+      this.name = name;
+      this.formattedAddress = formattedAddress;
+      this.rating = rating;
+      this.openNow = openNow;
+    }
+
+    Map<String,Object> toMap() {
+      Map<String,Object> map = new HashMap<>();
+      map.put("name", name);
+      map.put("formatted_address", formattedAddress);
+      if (rating != null) {
+        map.put("rating", rating);
+      }
+      if (openNow != null) {
+        Map<String,Object> openingHours = new HashMap<>();
+        openingHours.put("open_now", openNow);
+        map.put("opening_hours", openingHours);
+      }
+      return map;
+    }
+  }
+}